@@ -0,0 +1,70 @@
+package ru.misterparser.bonds.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.misterparser.bonds.model.Bond;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость копирования одной облигации перед пересчетом: прежнее рефлексивное копирование
+ * (getDeclaredFields + setAccessible + сравнение имен полей) против Bond.copySourceData()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BondCopyBenchmark {
+
+    private static final Set<String> CALCULATED_FIELDS = new HashSet<>(Arrays.asList(
+            "couponDaily", "nkd", "costs", "couponRedemption", "profit", "profitNet", "annualYield",
+            "couponOffer", "profitOffer", "profitNetOffer", "annualYieldOffer", "daysToMaturity", "daysToOffer"));
+
+    private List<Bond> bonds;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bonds = SyntheticBonds.calculatedUniverse(1024);
+    }
+
+    @Benchmark
+    public Bond reflectiveCopy() throws IllegalAccessException {
+        Bond original = nextBond();
+        Bond copy = new Bond();
+        for (Field field : Bond.class.getDeclaredFields()) {
+            field.setAccessible(true);
+            if (CALCULATED_FIELDS.contains(field.getName())) {
+                continue;
+            }
+            field.set(copy, field.get(original));
+        }
+        return copy;
+    }
+
+    @Benchmark
+    public Bond copySourceData() {
+        return nextBond().copySourceData();
+    }
+
+    private Bond nextBond() {
+        index = (index + 1) & 1023;
+        return bonds.get(index);
+    }
+}
@@ -0,0 +1,109 @@
+package ru.misterparser.bonds.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.config.ScreenerConfig;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.repository.BondRepository;
+import ru.misterparser.bonds.service.BondFilteringService;
+import ru.misterparser.bonds.service.BondUniverseCache;
+import ru.misterparser.bonds.service.CalculationService;
+import ru.misterparser.bonds.service.CustomFeeCalculator;
+import ru.misterparser.bonds.service.ScreenerResultCache;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтрация и сортировка облигаций для страницы скринера (limit 100) и подписки (без ограничения),
+ * без комиссии и с кастомной комиссией
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BondFilteringBenchmark {
+
+    @Param({"3000", "30000", "300000"})
+    private int size;
+
+    @Param({"", "0.30"})
+    private String customFeePercent;
+
+    private BondFilteringService bondFilteringService;
+    private CalculationService calculationService;
+    private BondFilteringService.FilterParams screenerParams;
+    private BondFilteringService.FilterParams subscriptionParams;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticBonds.quietLogging();
+        List<Bond> bonds = SyntheticBonds.calculatedUniverse(size);
+
+        BondRepository bondRepository = new BondRepository(null) {
+            @Override
+            public List<Bond> findAllBondsForFiltering() {
+                return bonds;
+            }
+        };
+        CalcConfig calcConfig = SyntheticBonds.calcConfig(CalcConfig.Kernel.BIGDECIMAL, 1);
+        calculationService = SyntheticBonds.calculationService(calcConfig,
+                SyntheticBonds.stubDataRepository(bonds), SyntheticBonds.capturingCalculationRepository(null));
+        // Кэш результатов отключен: измеряется сама фильтрация
+        ScreenerConfig screenerConfig = new ScreenerConfig();
+        screenerConfig.setCacheEnabled(false);
+        bondFilteringService = new BondFilteringService(new BondUniverseCache(bondRepository, calculationService),
+                calculationService, new CustomFeeCalculator(calcConfig, calculationService),
+                new ScreenerResultCache(screenerConfig));
+
+        BigDecimal fee = customFeePercent.isEmpty() ? null : new BigDecimal(customFeePercent);
+
+        screenerParams = new BondFilteringService.FilterParams();
+        screenerParams.setMinWeeksToMaturity(0);
+        screenerParams.setMaxWeeksToMaturity(260);
+        screenerParams.setMinYield(new BigDecimal("10"));
+        screenerParams.setMaxYield(new BigDecimal("40"));
+        screenerParams.setIncludeOffer(true);
+        screenerParams.setCustomFeePercent(fee);
+        screenerParams.setLimit(100);
+
+        subscriptionParams = new BondFilteringService.FilterParams();
+        subscriptionParams.setMinWeeksToMaturity(26);
+        subscriptionParams.setMaxWeeksToMaturity(156);
+        subscriptionParams.setMinYield(new BigDecimal("15"));
+        subscriptionParams.setIncludeOffer(false);
+        subscriptionParams.setCustomFeePercent(fee);
+        subscriptionParams.setSelectedRatings(Arrays.asList("ruAA", "ruAA-", "ruA+", "ruA", "ruA-"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        calculationService.shutdownCalculationPool();
+    }
+
+    @Benchmark
+    public List<Bond> screenerTop100() {
+        return bondFilteringService.getFilteredAndSortedBonds(screenerParams);
+    }
+
+    @Benchmark
+    public List<Bond> subscriptionAll() {
+        return bondFilteringService.getFilteredAndSortedBonds(subscriptionParams);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.misterparser.bonds.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.repository.BondRepository;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Маппинг строк представления bonds в Bond (bondRowMapper из BondRepository) поверх синтетического ResultSet.
+ * ResultSet реализован через Proxy, поэтому в замер входит постоянная стоимость диспетчеризации геттеров.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BondRowMapperBenchmark {
+
+    private static final String[] COLUMNS = {"id", "isin", "ticker", "short_name", "coupon_value", "maturity_date",
+            "face_value", "coupon_frequency", "coupon_length", "coupon_days_passed", "offer_date", "figi",
+            "instrument_uid", "asset_uid", "brand_name", "price_ask", "price_bid", "rating_value", "rating_code",
+            "coupon_daily", "nkd", "costs", "coupon_redemption", "profit", "profit_net", "annual_yield",
+            "coupon_offer", "profit_offer", "profit_net_offer", "annual_yield_offer", "days_to_maturity",
+            "days_to_offer", "moex_updated_at", "tbank_bonds_updated_at", "tbank_prices_updated_at",
+            "dohod_ratings_updated_at", "bonds_calc_updated_at"};
+
+    @Param({"3000", "30000", "300000"})
+    private int size;
+
+    private RowMapper<Bond> bondRowMapper;
+    private Object[][] rows;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Field mapperField = BondRepository.class.getDeclaredField("bondRowMapper");
+        mapperField.setAccessible(true);
+        bondRowMapper = (RowMapper<Bond>) mapperField.get(new BondRepository(null));
+
+        List<Bond> bonds = SyntheticBonds.calculatedUniverse(size);
+        rows = new Object[bonds.size()][];
+        for (int i = 0; i < bonds.size(); i++) {
+            rows[i] = toRow(bonds.get(i));
+        }
+    }
+
+    @Benchmark
+    public void mapRows(Blackhole blackhole) throws SQLException {
+        ResultSet rs = resultSet(rows);
+        int rowNum = 0;
+        while (rs.next()) {
+            blackhole.consume(bondRowMapper.mapRow(rs, rowNum++));
+        }
+    }
+
+    private static Object[] toRow(Bond bond) {
+        return new Object[]{bond.getId(), bond.getIsin(), bond.getTicker(), bond.getShortName(), bond.getCouponValue(),
+                date(bond.getMaturityDate()), bond.getFaceValue(), bond.getCouponFrequency(), bond.getCouponLength(),
+                bond.getCouponDaysPassed(), date(bond.getOfferDate()), bond.getFigi(), bond.getInstrumentUid(),
+                bond.getAssetUid(), bond.getBrandName(), bond.getPriceAsk(), bond.getPriceBid(), bond.getRatingValue(),
+                bond.getRatingCode(), bond.getCouponDaily(), bond.getNkd(), bond.getCosts(), bond.getCouponRedemption(),
+                bond.getProfit(), bond.getProfitNet(), bond.getAnnualYield(), bond.getCouponOffer(),
+                bond.getProfitOffer(), bond.getProfitNetOffer(), bond.getAnnualYieldOffer(), bond.getDaysToMaturity(),
+                bond.getDaysToOffer(), timestamp(bond.getMoexUpdatedAt()), timestamp(bond.getTbankBondsUpdatedAt()),
+                timestamp(bond.getTbankPricesUpdatedAt()), timestamp(bond.getDohodRatingsUpdatedAt()),
+                timestamp(bond.getBondsCalcUpdatedAt())};
+    }
+
+    private static Date date(LocalDate value) {
+        return value != null ? Date.valueOf(value) : null;
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+
+    /**
+     * ResultSet только для чтения по имени колонки - ровно то, что использует bondRowMapper
+     */
+    private static ResultSet resultSet(Object[][] rows) {
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columnIndexes.put(COLUMNS[i], i);
+        }
+        int[] cursor = {-1};
+
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    if ("next".equals(method.getName())) {
+                        return ++cursor[0] < rows.length;
+                    }
+                    Integer index = columnIndexes.get((String) args[0]);
+                    if (index == null) {
+                        throw new SQLException("Unknown column: " + args[0]);
+                    }
+                    Object value = rows[cursor[0]][index];
+                    switch (method.getName()) {
+                        case "getLong":
+                            return value != null ? ((Number) value).longValue() : 0L;
+                        case "getInt":
+                            return value != null ? ((Number) value).intValue() : 0;
+                        case "getObject":
+                        case "getString":
+                        case "getBigDecimal":
+                        case "getDate":
+                        case "getTimestamp":
+                            return value;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,72 @@
+package ru.misterparser.bonds.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.service.CalculationService;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчет показателей по всему набору облигаций: массовый расчет (без записи в БД)
+ * и пересчет с кастомной комиссией
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CalculationBenchmark {
+
+    private static final BigDecimal CUSTOM_FEE_PERCENT = new BigDecimal("0.30");
+
+    @Param({"3000", "30000", "300000"})
+    private int size;
+
+    @Param({"BIGDECIMAL", "DOUBLE"})
+    private CalcConfig.Kernel kernel;
+
+    private List<Bond> bonds;
+    private CalculationService calculationService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticBonds.quietLogging();
+        bonds = SyntheticBonds.sourceUniverse(size);
+        calculationService = SyntheticBonds.calculationService(SyntheticBonds.calcConfig(kernel, 1),
+                SyntheticBonds.stubDataRepository(bonds), SyntheticBonds.capturingCalculationRepository(null));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        calculationService.shutdownCalculationPool();
+    }
+
+    @Benchmark
+    public void calculateAllBonds() {
+        calculationService.calculateAllBondsFull();
+    }
+
+    @Benchmark
+    public void calculateBondWithCustomFee(Blackhole blackhole) {
+        for (Bond bond : bonds) {
+            blackhole.consume(calculationService.calculateBondWithCustomFee(bond, CUSTOM_FEE_PERCENT));
+        }
+    }
+}
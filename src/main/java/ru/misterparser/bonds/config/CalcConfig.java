@@ -11,8 +11,22 @@ import java.math.BigDecimal;
 @ConfigurationProperties(prefix = "calc")
 public class CalcConfig {
     private int periodMinutes;
+    /** Период планового расчета вне торговых сессий (цены не меняются) */
+    private int offSessionPeriodMinutes;
     private BigDecimal ndfl;
     private int precision;
     private int minDaysToMaturity;
     private BigDecimal maxYield;
+    private boolean bulkMode = true;
+    private int chunkSize = 500;
+    private int parallelism = 1;
+    private boolean incremental = false;
+    private int incrementalOverlapSeconds = 60;
+    private int generationsToKeep = 3;
+    private Kernel kernel = Kernel.BIGDECIMAL;
+
+    public enum Kernel {
+        BIGDECIMAL,
+        DOUBLE
+    }
 }
\ No newline at end of file
@@ -11,4 +11,8 @@ public class MoexConfig {
     private boolean enabled;
     private String csvUrl;
     private String cron;
+    /** Размер пачки облигаций для записи в БД */
+    private int writeBatchSize;
+    /** Сколько пачек может ждать записи, пока разбор CSV продолжается */
+    private int writeQueueCapacity;
 }
\ No newline at end of file
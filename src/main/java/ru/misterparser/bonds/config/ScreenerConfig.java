@@ -0,0 +1,14 @@
+package ru.misterparser.bonds.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "screener")
+public class ScreenerConfig {
+    private boolean cacheEnabled = true;
+    private int cacheMaxEntries = 256;
+    private int cacheMaxWeight = 100000;
+}
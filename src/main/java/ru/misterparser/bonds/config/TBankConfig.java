@@ -11,9 +11,15 @@ public class TBankConfig {
     private boolean enabled;
     private String apiUrl;
     private String token;
+    /** Запросов в минуту */
     private int rateLimit;
+    /** Сколько запросов к API выполняется одновременно */
+    private int concurrency;
+    private int requestTimeoutSeconds;
     private InstrumentsConfig instruments = new InstrumentsConfig();
     private MarketDataConfig marketdata = new MarketDataConfig();
+    private StreamConfig stream = new StreamConfig();
+    private CalendarConfig calendar = new CalendarConfig();
 
     @Data
     public static class InstrumentsConfig {
@@ -23,5 +29,88 @@ public class TBankConfig {
     @Data
     public static class MarketDataConfig {
         private String cron;
+        /** Способ получения цен */
+        private Mode mode;
+        /** Сколько FIGI передавать в одном запросе GetLastPrices */
+        private int lastPricesChunkSize;
+        /** Цены сделок старше этого возраста в режиме LAST_PRICES не записываются */
+        private int lastPriceMaxAgeMinutes;
+        /** Для каких облигаций в режиме LAST_PRICES дополнительно запрашивать стакан */
+        private OrderBookPolicy orderbookPolicy;
+        /** Интервалы обновления облигаций по спросу и волатильности */
+        private PriorityConfig priority = new PriorityConfig();
+    }
+
+    /**
+     * Адаптивное обновление цен: каждой облигации назначается уровень с собственным интервалом обновления
+     */
+    @Data
+    public static class PriorityConfig {
+        private boolean enabled;
+        private int hotIntervalSeconds;
+        private int warmIntervalSeconds;
+        private int coldIntervalSeconds;
+        /** Сколько первых облигаций из топа каждого пользователя считаются востребованными */
+        private int userTopN;
+        /** Изменение цены (в процентах, сглаженное), начиная с которого облигация считается волатильной */
+        private double volatilityThresholdPercent;
+        /** Не более стольких облигаций за один запуск обновления - бюджет запросов к API */
+        private int maxBondsPerRun;
+        /** Интервал пересчета множества востребованных облигаций */
+        private int demandRefreshMinutes;
+    }
+
+    /**
+     * Потоковое получение стаканов (MarketDataStreamService) вместо периодического опроса
+     */
+    @Data
+    public static class StreamConfig {
+        private boolean enabled;
+        /** Адрес API для потока; пусто - api-url */
+        private String url;
+        /** Интервал записи накопленных цен в БД */
+        private int flushIntervalMs;
+        /** Интервал пересчета облигаций, цены которых изменились с прошлого пересчета */
+        private int recalcIntervalSeconds;
+        /** Сколько инструментов подписывается в одном потоке */
+        private int maxInstrumentsPerStream;
+        private int reconnectDelaySeconds;
+        /** Тестовый сервер потока (профиль fake-stream) */
+        private int fakeServerPort;
+        private int fakeTickIntervalMs;
+        /** Файл с записанными сообщениями потока (по одному JSON на строку); пусто - случайные цены */
+        private String fakeReplayFile;
+    }
+
+    /**
+     * Торговый календарь биржи (InstrumentsService/TradingSchedules)
+     */
+    @Data
+    public static class CalendarConfig {
+        /** Биржа, например MOEX */
+        private String exchange;
+        /** На сколько дней вперед запрашивается расписание */
+        private int daysAhead;
+        private String refreshCron;
+        /** Каталог дискового кэша расписания */
+        private String cachePath;
+        /** Встроенное расписание на случай недоступности API (ресурс classpath) */
+        private String fallbackResource;
+    }
+
+    public enum Mode {
+        /** Стакан (GetOrderBook) по каждой облигации */
+        ORDERBOOK,
+        /** Цены последних сделок всех облигаций пачками (GetLastPrices), стакан - по orderbook-policy */
+        LAST_PRICES
+    }
+
+    public enum OrderBookPolicy {
+        /** Стакан не запрашивается */
+        NONE,
+        /** Стакан для облигаций, попадающих в списки включенных подписок на рейтинг */
+        SUBSCRIBED,
+        /** Стакан для всех облигаций */
+        ALL
     }
 }
\ No newline at end of file
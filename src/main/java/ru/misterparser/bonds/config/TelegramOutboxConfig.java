@@ -0,0 +1,22 @@
+package ru.misterparser.bonds.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "telegram.outbox")
+public class TelegramOutboxConfig {
+    private long pollIntervalMs = 1000;
+    private int batchSize = 100;
+    private int workers = 4;
+    private double globalRatePerSecond = 30;
+    private long perChatIntervalMs = 1000;
+    private int maxAttempts = 5;
+    private int backoffInitialSeconds = 5;
+    private int backoffMaxSeconds = 600;
+    private int sentRetentionDays = 7;
+    private int pendingTtlHours = 24;
+    private int claimTimeoutSeconds = 600;
+}
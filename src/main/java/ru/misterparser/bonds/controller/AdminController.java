@@ -4,6 +4,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.misterparser.bonds.service.*;
+
+import java.math.BigDecimal;
 /**
  * Контроллер для административных операций
  * Предназначен для управления системой и выполнения служебных задач
@@ -17,9 +19,15 @@ public class AdminController {
     private final MoexService moexService;
     private final TBankInstrumentsService tBankInstrumentsService;
     private final TBankMarketDataService tBankMarketDataService;
+    private final TBankMarketDataStream tBankMarketDataStream;
+    private final PriceRefreshPlanner priceRefreshPlanner;
+    private final TradingCalendarService tradingCalendarService;
     private final RaExpertService raExpertService;
     private final DohodService dohodService;
     private final CalculationService calculationService;
+    private final BondUniverseCache bondUniverseCache;
+    private final ScreenerResultCache screenerResultCache;
+    private final TelegramOutboxService telegramOutboxService;
     /**
      * Парсинг облигаций с MOEX
      */
@@ -104,6 +112,20 @@ public class AdminController {
             return ResponseEntity.status(500).body("Error during bonds calculation: " + e.getMessage());
         }
     }
+    /**
+     * Полный пересчет всех облигаций в обход инкрементального режима
+     */
+    @PostMapping("/bonds/calculate/full")
+    public ResponseEntity<String> calculateBondsFull() {
+        log.info("Admin: Manual full bonds calculation triggered");
+        try {
+            calculationService.calculateAllBondsFull();
+            return ResponseEntity.ok("Full bonds calculation completed successfully");
+        } catch (Exception e) {
+            log.error("Admin: Error during manual full bonds calculation", e);
+            return ResponseEntity.status(500).body("Error during full bonds calculation: " + e.getMessage());
+        }
+    }
     /**
      * Расчет конкретной облигации по ISIN
      */
@@ -118,6 +140,97 @@ public class AdminController {
             return ResponseEntity.status(500).body("Error during bond calculation: " + e.getMessage());
         }
     }
+    /**
+     * Состояние снимка облигаций в памяти
+     */
+    @GetMapping("/bonds/universe")
+    public ResponseEntity<String> getBondUniverseStatus() {
+        return ResponseEntity.ok(bondUniverseCache.getStaleness());
+    }
+    /**
+     * Состояние торгового календаря биржи
+     */
+    @GetMapping("/tbank/calendar")
+    public ResponseEntity<String> getTradingCalendarStatus() {
+        return ResponseEntity.ok(tradingCalendarService.getStatus());
+    }
+    /**
+     * Обновление торгового календаря из API
+     */
+    @PostMapping("/tbank/calendar/refresh")
+    public ResponseEntity<String> refreshTradingCalendar() {
+        log.info("Admin: Trading calendar refresh triggered");
+        tradingCalendarService.refresh();
+        return ResponseEntity.ok(tradingCalendarService.getStatus());
+    }
+    /**
+     * Уровни адаптивного обновления цен T-Bank
+     */
+    @GetMapping("/tbank/prices/priorities")
+    public ResponseEntity<String> getTBankPricePriorities() {
+        return ResponseEntity.ok(priceRefreshPlanner.getStatistics());
+    }
+    /**
+     * Состояние потока рыночных данных T-Bank
+     */
+    @GetMapping("/tbank/stream")
+    public ResponseEntity<String> getTBankStreamStatus() {
+        return ResponseEntity.ok(tBankMarketDataStream.getStatistics());
+    }
+    /**
+     * Состояние очереди исходящих сообщений Telegram
+     */
+    @GetMapping("/telegram/outbox")
+    public ResponseEntity<String> getTelegramOutboxStatus() {
+        return ResponseEntity.ok(telegramOutboxService.getStatistics());
+    }
+    /**
+     * Счетчики кэша результатов скринера
+     */
+    @GetMapping("/screener/cache")
+    public ResponseEntity<String> getScreenerCacheStatistics() {
+        return ResponseEntity.ok(screenerResultCache.getStatistics());
+    }
+    /**
+     * Сброс кэша результатов скринера
+     */
+    @PostMapping("/screener/cache/clear")
+    public ResponseEntity<String> clearScreenerCache() {
+        log.info("Admin: Screener cache clear triggered");
+        screenerResultCache.clear();
+        return ResponseEntity.ok(screenerResultCache.getStatistics());
+    }
+    /**
+     * Принудительное перечитывание снимка облигаций
+     */
+    @PostMapping("/bonds/universe/refresh")
+    public ResponseEntity<String> refreshBondUniverse() {
+        log.info("Admin: Bond universe refresh triggered");
+        try {
+            bondUniverseCache.refresh();
+            return ResponseEntity.ok(bondUniverseCache.getStaleness());
+        } catch (Exception e) {
+            log.error("Admin: Error during bond universe refresh", e);
+            return ResponseEntity.status(500).body("Error during bond universe refresh: " + e.getMessage());
+        }
+    }
+    /**
+     * Сверка double-расчета с эталонным BigDecimal-расчетом
+     */
+    @PostMapping("/bonds/calculate/kernel-check")
+    public ResponseEntity<String> checkCalculationKernel(@RequestParam(required = false) BigDecimal feePercent) {
+        log.info("Admin: Calculation kernel check triggered (fee: {})", feePercent);
+        try {
+            CalculationService.KernelComparison comparison = calculationService.compareKernels(feePercent);
+            return ResponseEntity.ok(String.format(
+                    "Kernel check completed - Compared: %d, Mismatched: %d, Max diff: %s (%s %s), Tolerance: %s",
+                    comparison.getCompared(), comparison.getMismatched(), comparison.getMaxDiff(),
+                    comparison.getMaxDiffIsin(), comparison.getMaxDiffField(), comparison.getTolerance()));
+        } catch (Exception e) {
+            log.error("Admin: Error during calculation kernel check", e);
+            return ResponseEntity.status(500).body("Error during calculation kernel check: " + e.getMessage());
+        }
+    }
     /**
      * Полное обновление всех данных (последовательно)
      */
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.*;
 import ru.misterparser.bonds.model.RatingSubscription;
 import ru.misterparser.bonds.model.TelegramUser;
 import ru.misterparser.bonds.repository.RatingSubscriptionRepository;
+import ru.misterparser.bonds.scheduler.RatingNotificationScheduler;
 import ru.misterparser.bonds.service.TelegramAuthService;
 import ru.misterparser.bonds.service.RatingNotificationService;
 
@@ -27,6 +28,7 @@ public class SubscriptionController {
     private final RatingSubscriptionRepository subscriptionRepository;
     private final TelegramAuthService telegramAuthService;
     private final RatingNotificationService ratingNotificationService;
+    private final RatingNotificationScheduler ratingNotificationScheduler;
 
     /**
      * Создает новую подписку на рейтинг
@@ -48,6 +50,7 @@ public class SubscriptionController {
 
             // Сохраняем подписку
             RatingSubscription savedSubscription = subscriptionRepository.save(subscription);
+            ratingNotificationScheduler.schedule(savedSubscription);
             
             log.info("Создана новая подписка на рейтинг для пользователя {}: {}", 
                        currentUser.getId(), savedSubscription.getName());
@@ -139,6 +142,7 @@ public class SubscriptionController {
             }
 
             subscriptionRepository.deleteById(id);
+            ratingNotificationScheduler.unschedule(id);
             
             log.info("Удалена подписка на рейтинг для пользователя {}: {}", 
                        currentUser.getId(), subscription.get().getName());
@@ -177,6 +181,7 @@ public class SubscriptionController {
 
             boolean newStatus = !subscription.get().isEnabled();
             subscriptionRepository.setEnabled(id, newStatus);
+            ratingNotificationScheduler.refresh(id);
             
             log.info("Подписка на рейтинг для пользователя {} {}: {}", 
                        currentUser.getId(), newStatus ? "включена" : "выключена", subscription.get().getName());
@@ -219,6 +224,7 @@ public class SubscriptionController {
 
             // Обновляем время последней отправки
             subscriptionRepository.updateLastSentAt(id, LocalDateTime.now());
+            ratingNotificationScheduler.refresh(id);
             
             log.info("Принудительная отправка подписки на рейтинг для пользователя {}: {}", 
                        currentUser.getId(), subscription.get().getName());
@@ -284,6 +290,7 @@ public class SubscriptionController {
                     }
                     
                     subscriptionRepository.updatePeriodHours(id, periodHours);
+                    ratingNotificationScheduler.refresh(id);
                     
                     log.info("Обновлен интервал подписки для пользователя {}: {} -> {} ч", 
                                currentUser.getId(), subscription.get().getName(), periodHours);
@@ -6,14 +6,12 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-import ru.misterparser.bonds.model.Bond;
 import ru.misterparser.bonds.model.UserOrder;
 import ru.misterparser.bonds.service.UserOrderService;
 
 import javax.validation.Valid;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -113,22 +111,12 @@ public class UserOrderController {
     @GetMapping("/bonds")
     public ResponseEntity<?> getAvailableBonds(@RequestParam(required = false) String search) {
         try {
-            List<Bond> bonds = userOrderService.getAvailableBonds();
-            
-            // Фильтруем по поисковому запросу если указан
+            // Поиск по n-граммному индексу снимка, если указан запрос
             if (search != null && !search.trim().isEmpty()) {
-                String searchLower = search.trim().toLowerCase();
-                bonds = bonds.stream()
-                    .filter(bond -> 
-                        (bond.getIsin() != null && bond.getIsin().toLowerCase().contains(searchLower)) ||
-                        (bond.getTicker() != null && bond.getTicker().toLowerCase().contains(searchLower)) ||
-                        (bond.getShortName() != null && bond.getShortName().toLowerCase().contains(searchLower))
-                    )
-                    .limit(20) // Ограничиваем результаты для автодополнения
-                    .collect(Collectors.toList());
+                return ResponseEntity.ok(userOrderService.searchBonds(search, 20)); // Ограничиваем результаты для автодополнения
             }
             
-            return ResponseEntity.ok(bonds);
+            return ResponseEntity.ok(userOrderService.getAvailableBonds());
         } catch (Exception e) {
             log.error("Ошибка при получении списка облигаций", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
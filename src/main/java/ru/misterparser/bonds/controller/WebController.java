@@ -11,7 +11,6 @@ import ru.misterparser.bonds.model.UserFilterSettings;
 import ru.misterparser.bonds.service.BondFilteringService;
 import ru.misterparser.bonds.service.UserFilterSettingsService;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 @Controller
@@ -48,75 +47,18 @@ public class WebController {
             userFilterSettingsService.saveSettingsFromParams(finalLimit, finalWeeksToMaturity, finalShowOffer, 
                 finalSearchText, finalFeePercent, finalYieldRange, finalSelectedRatings);
             
-            // Парсим параметр weeksToMaturity
-            int minWeeksToMaturity;
-            int maxWeeksToMaturity;
-            
-            if (finalWeeksToMaturity.contains("-")) {
-                String[] parts = finalWeeksToMaturity.split("-", 2);
-                try {
-                    minWeeksToMaturity = Integer.parseInt(parts[0].trim());
-                    maxWeeksToMaturity = Integer.parseInt(parts[1].trim());
-                } catch (NumberFormatException e) {
-                    minWeeksToMaturity = 0;
-                    maxWeeksToMaturity = 26;
-                }
-            } else {
-                try {
-                    minWeeksToMaturity = 0;
-                    maxWeeksToMaturity = Integer.parseInt(finalWeeksToMaturity.trim());
-                } catch (NumberFormatException e) {
-                    minWeeksToMaturity = 0;
-                    maxWeeksToMaturity = 26;
-                }
-            }
-            
-            // Парсим параметр yieldRange
-            double minYield;
-            double maxYield;
-            
-            if (finalYieldRange.contains("-")) {
-                String[] parts = finalYieldRange.split("-", 2);
-                try {
-                    minYield = Double.parseDouble(parts[0].trim());
-                    maxYield = Double.parseDouble(parts[1].trim());
-                    // Проверяем что разница больше 0
-                    if (maxYield <= minYield) {
-                        minYield = 0;
-                        maxYield = 50;
-                    }
-                } catch (NumberFormatException e) {
-                    minYield = 0;
-                    maxYield = 50;
-                }
-            } else {
-                try {
-                    minYield = 0;
-                    maxYield = Double.parseDouble(finalYieldRange.trim());
-                    if (maxYield <= 0) {
-                        maxYield = 50;
-                    }
-                } catch (NumberFormatException e) {
-                    minYield = 0;
-                    maxYield = 50;
-                }
-            }
+            // Создаём параметры фильтрации
+            BondFilteringService.FilterParams params = UserFilterSettingsService.toFilterParams(finalLimit,
+                    finalWeeksToMaturity, finalShowOffer, finalSearchText, finalFeePercent, finalYieldRange,
+                    finalSelectedRatings);
+            int minWeeksToMaturity = params.getMinWeeksToMaturity();
+            int maxWeeksToMaturity = params.getMaxWeeksToMaturity();
+            double minYield = params.getMinYield().doubleValue();
+            double maxYield = params.getMaxYield().doubleValue();
             
             log.info("Loading top bonds page with limit: {}, weeksToMaturity: '{}' (parsed: {}-{}), showOffer: {}, searchText: '{}', feePercent: {}, yieldRange: '{}' (parsed: {}-{}), selectedRatings: {}", 
                        finalLimit, finalWeeksToMaturity, minWeeksToMaturity, maxWeeksToMaturity, finalShowOffer, finalSearchText, finalFeePercent, finalYieldRange, minYield, maxYield, finalSelectedRatings);
             
-            // Создаём параметры фильтрации  
-            BondFilteringService.FilterParams params = new BondFilteringService.FilterParams();
-            params.setMinWeeksToMaturity(minWeeksToMaturity);
-            params.setMaxWeeksToMaturity(maxWeeksToMaturity);
-            params.setMinYield(BigDecimal.valueOf(minYield));
-            params.setMaxYield(BigDecimal.valueOf(maxYield));
-            params.setIncludeOffer(finalShowOffer);
-            params.setSearchText(finalSearchText);
-            params.setCustomFeePercent(BigDecimal.valueOf(finalFeePercent));
-            params.setLimit(finalLimit);
-            params.setSelectedRatings(finalSelectedRatings);
-            
             // Получаем отфильтрованные и отсортированные облигации
             List<Bond> bonds = bondFilteringService.getFilteredAndSortedBonds(params);
             
@@ -51,6 +51,10 @@ public class Bond {
     private BigDecimal profitOffer;
     private BigDecimal profitNetOffer;
     private BigDecimal annualYieldOffer;
+
+    // Число дней до погашения и до оферты на дату расчета (для пересчета доходности с комиссией)
+    private Integer daysToMaturity;
+    private Integer daysToOffer;
     
     // Отдельные даты обновления исходных сущностей
     private LocalDateTime moexUpdatedAt;
@@ -62,4 +66,38 @@ public class Bond {
     public Bond(String isin) {
         this.isin = isin;
     }
+
+    /**
+     * Копия облигации с исходными данными без расчетных показателей
+     * (расчетные поля заполняются заново при пересчете)
+     */
+    public Bond copySourceData() {
+        Bond copy = new Bond();
+        copy.id = id;
+        copy.isin = isin;
+        copy.ticker = ticker;
+        copy.shortName = shortName;
+        copy.couponValue = couponValue;
+        copy.maturityDate = maturityDate;
+        copy.faceValue = faceValue;
+        copy.couponFrequency = couponFrequency;
+        copy.couponLength = couponLength;
+        copy.couponDaysPassed = couponDaysPassed;
+        copy.offerDate = offerDate;
+        copy.figi = figi;
+        copy.instrumentUid = instrumentUid;
+        copy.assetUid = assetUid;
+        copy.brandName = brandName;
+        copy.priceAsk = priceAsk;
+        copy.priceBid = priceBid;
+        copy.ratingValue = ratingValue;
+        copy.ratingCode = ratingCode;
+        copy.fee = fee;
+        copy.moexUpdatedAt = moexUpdatedAt;
+        copy.tbankBondsUpdatedAt = tbankBondsUpdatedAt;
+        copy.tbankPricesUpdatedAt = tbankPricesUpdatedAt;
+        copy.dohodRatingsUpdatedAt = dohodRatingsUpdatedAt;
+        copy.bondsCalcUpdatedAt = bondsCalcUpdatedAt;
+        return copy;
+    }
 }
\ No newline at end of file
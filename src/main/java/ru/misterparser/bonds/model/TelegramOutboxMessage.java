@@ -0,0 +1,15 @@
+package ru.misterparser.bonds.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class TelegramOutboxMessage {
+    private Long id;
+    private Long chatId;
+    private String text;
+    private String parseMode;
+    private int attempts;
+    private LocalDateTime createdAt;
+}
@@ -8,6 +8,9 @@ import ru.misterparser.bonds.model.Bond;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -91,6 +94,95 @@ public class BondCalculationDataRepository {
         return jdbcTemplate.query(sql, bondDataRowMapper);
     }
 
+    /**
+     * Получает облигации, у которых после указанного момента изменилась хотя бы одна
+     * из исходных записей в moex_bonds, tbank_bonds, tbank_prices или dohod_ratings.
+     */
+    public List<Bond> findChangedSinceForCalculation(LocalDateTime since) {
+        String sql = "SELECT " +
+                "mb.isin, " +
+                "mb.isin as ticker, " +
+                "mb.short_name, " +
+                "mb.coupon_value, " +
+                "mb.maturity_date, " +
+                "mb.face_value, " +
+                "mb.coupon_frequency, " +
+                "mb.coupon_length, " +
+                "mb.coupon_days_passed, " +
+                "mb.offer_date, " +
+                "tb.figi, " +
+                "tb.instrument_uid, " +
+                "tb.asset_uid, " +
+                "tb.brand_name, " +
+                "tp.price_ask, " +
+                "tp.price_bid, " +
+                "dr.rating_value, " +
+                "dr.rating_code " +
+                "FROM moex_bonds mb " +
+                "LEFT JOIN tbank_bonds tb ON tb.ticker = mb.isin OR tb.figi = mb.isin " +
+                "LEFT JOIN tbank_prices tp ON tp.figi = tb.figi " +
+                "LEFT JOIN dohod_ratings dr ON dr.isin = mb.isin " +
+                "WHERE mb.face_value IS NOT NULL " +
+                "AND mb.coupon_value IS NOT NULL " +
+                "AND mb.maturity_date IS NOT NULL " +
+                "AND mb.coupon_length IS NOT NULL " +
+                "AND (mb.updated_at > ? OR tb.updated_at > ? OR tp.updated_at > ? OR dr.updated_at > ?) " +
+                "ORDER BY mb.isin";
+
+        Timestamp watermark = Timestamp.valueOf(since);
+        return jdbcTemplate.query(sql, bondDataRowMapper, watermark, watermark, watermark, watermark);
+    }
+
+    /**
+     * Получает данные облигаций по списку ISIN для расчета показателей
+     */
+    public List<Bond> findByIsinsForCalculation(Collection<String> isins) {
+        if (isins.isEmpty()) {
+            return List.of();
+        }
+        String sql = "SELECT " +
+                "mb.isin, " +
+                "mb.isin as ticker, " +
+                "mb.short_name, " +
+                "mb.coupon_value, " +
+                "mb.maturity_date, " +
+                "mb.face_value, " +
+                "mb.coupon_frequency, " +
+                "mb.coupon_length, " +
+                "mb.coupon_days_passed, " +
+                "mb.offer_date, " +
+                "tb.figi, " +
+                "tb.instrument_uid, " +
+                "tb.asset_uid, " +
+                "tb.brand_name, " +
+                "tp.price_ask, " +
+                "tp.price_bid, " +
+                "dr.rating_value, " +
+                "dr.rating_code " +
+                "FROM moex_bonds mb " +
+                "LEFT JOIN tbank_bonds tb ON tb.ticker = mb.isin OR tb.figi = mb.isin " +
+                "LEFT JOIN tbank_prices tp ON tp.figi = tb.figi " +
+                "LEFT JOIN dohod_ratings dr ON dr.isin = mb.isin " +
+                "WHERE mb.face_value IS NOT NULL " +
+                "AND mb.coupon_value IS NOT NULL " +
+                "AND mb.maturity_date IS NOT NULL " +
+                "AND mb.coupon_length IS NOT NULL " +
+                "AND mb.isin = ANY(?) " +
+                "ORDER BY mb.isin";
+
+        return jdbcTemplate.query(sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", isins.toArray())),
+                bondDataRowMapper);
+    }
+
+    /**
+     * Текущее время БД - используется как отметка расчета, чтобы сравнение
+     * с updated_at исходных таблиц не зависело от часов приложения
+     */
+    public LocalDateTime getDatabaseTime() {
+        return jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", Timestamp.class).toLocalDateTime();
+    }
+
     /**
      * Получает данные конкретной облигации по ISIN для расчета показателей.
      */
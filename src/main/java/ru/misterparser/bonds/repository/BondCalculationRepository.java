@@ -1,36 +1,48 @@
 package ru.misterparser.bonds.repository;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.misterparser.bonds.model.Bond;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
 @Repository
 @RequiredArgsConstructor
 public class BondCalculationRepository {
 
+    private static final String CALCULATED_COLUMNS = "coupon_daily, nkd, costs, " +
+            "coupon_redemption, profit, profit_net, annual_yield, " +
+            "coupon_offer, profit_offer, profit_net_offer, annual_yield_offer, " +
+            "days_to_maturity, days_to_offer";
+
+    private static final String UPSERT_SQL = "INSERT INTO bonds_calc (generation, isin, " + CALCULATED_COLUMNS + ") " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (generation, isin) DO UPDATE SET " +
+            "coupon_daily = EXCLUDED.coupon_daily, " +
+            "nkd = EXCLUDED.nkd, " +
+            "costs = EXCLUDED.costs, " +
+            "coupon_redemption = EXCLUDED.coupon_redemption, " +
+            "profit = EXCLUDED.profit, " +
+            "profit_net = EXCLUDED.profit_net, " +
+            "annual_yield = EXCLUDED.annual_yield, " +
+            "coupon_offer = EXCLUDED.coupon_offer, " +
+            "profit_offer = EXCLUDED.profit_offer, " +
+            "profit_net_offer = EXCLUDED.profit_net_offer, " +
+            "annual_yield_offer = EXCLUDED.annual_yield_offer, " +
+            "days_to_maturity = EXCLUDED.days_to_maturity, " +
+            "days_to_offer = EXCLUDED.days_to_offer, " +
+            "updated_at = CURRENT_TIMESTAMP";
+
     private final JdbcTemplate jdbcTemplate;
 
-    public void saveOrUpdateCalculationData(Bond bond) {
-        String sql = "INSERT INTO bonds_calc (isin, coupon_daily, nkd, costs, " +
-                "coupon_redemption, profit, profit_net, annual_yield, " +
-                "coupon_offer, profit_offer, profit_net_offer, annual_yield_offer) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT (isin) DO UPDATE SET " +
-                "coupon_daily = EXCLUDED.coupon_daily, " +
-                "nkd = EXCLUDED.nkd, " +
-                "costs = EXCLUDED.costs, " +
-                "coupon_redemption = EXCLUDED.coupon_redemption, " +
-                "profit = EXCLUDED.profit, " +
-                "profit_net = EXCLUDED.profit_net, " +
-                "annual_yield = EXCLUDED.annual_yield, " +
-                "coupon_offer = EXCLUDED.coupon_offer, " +
-                "profit_offer = EXCLUDED.profit_offer, " +
-                "profit_net_offer = EXCLUDED.profit_net_offer, " +
-                "annual_yield_offer = EXCLUDED.annual_yield_offer, " +
-                "updated_at = CURRENT_TIMESTAMP";
-        
-        jdbcTemplate.update(sql,
+    public void saveOrUpdateCalculationData(Bond bond, long generation) {
+        jdbcTemplate.update(UPSERT_SQL,
+                generation,
                 bond.getIsin(),
                 bond.getCouponDaily(),
                 bond.getNkd(),
@@ -42,7 +54,57 @@ public class BondCalculationRepository {
                 bond.getCouponOffer(),
                 bond.getProfitOffer(),
                 bond.getProfitNetOffer(),
-                bond.getAnnualYieldOffer()
+                bond.getAnnualYieldOffer(),
+                bond.getDaysToMaturity(),
+                bond.getDaysToOffer()
         );
     }
-}
\ No newline at end of file
+
+    /**
+     * Сохраняет расчетные данные пачкой облигаций одним JDBC batch-запросом
+     */
+    public void saveOrUpdateCalculationDataBatch(List<Bond> bonds, long generation) {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Bond bond = bonds.get(i);
+                ps.setLong(1, generation);
+                ps.setString(2, bond.getIsin());
+                ps.setBigDecimal(3, bond.getCouponDaily());
+                ps.setBigDecimal(4, bond.getNkd());
+                ps.setBigDecimal(5, bond.getCosts());
+                ps.setBigDecimal(6, bond.getCouponRedemption());
+                ps.setBigDecimal(7, bond.getProfit());
+                ps.setBigDecimal(8, bond.getProfitNet());
+                ps.setBigDecimal(9, bond.getAnnualYield());
+                ps.setBigDecimal(10, bond.getCouponOffer());
+                ps.setBigDecimal(11, bond.getProfitOffer());
+                ps.setBigDecimal(12, bond.getProfitNetOffer());
+                ps.setBigDecimal(13, bond.getAnnualYieldOffer());
+                ps.setObject(14, bond.getDaysToMaturity(), Types.INTEGER);
+                ps.setObject(15, bond.getDaysToOffer(), Types.INTEGER);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return bonds.size();
+            }
+        });
+    }
+
+    /**
+     * Удаляет строки, которые не видны ни в одном из хранимых поколений (от oldestKept и новее):
+     * строки цепочек до базового поколения oldestKept, строки неопубликованных поколений
+     * и строки, замененные более новой строкой той же облигации в опубликованном поколении не новее oldestKept
+     */
+    public int deleteSupersededRows(long oldestKept, long oldestKeptBase) {
+        int deleted = jdbcTemplate.update("DELETE FROM bonds_calc WHERE generation < ?", oldestKeptBase);
+        deleted += jdbcTemplate.update("DELETE FROM bonds_calc b WHERE b.generation < ? AND (" +
+                "NOT EXISTS (SELECT 1 FROM calc_generation g WHERE g.id = b.generation AND g.published_at IS NOT NULL) " +
+                "OR EXISTS (SELECT 1 FROM bonds_calc n " +
+                "INNER JOIN calc_generation g ON g.id = n.generation AND g.published_at IS NOT NULL " +
+                "WHERE n.isin = b.isin AND n.generation > b.generation AND n.generation <= ?))",
+                oldestKept, oldestKept);
+        return deleted;
+    }
+}
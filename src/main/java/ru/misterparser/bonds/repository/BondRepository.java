@@ -8,6 +8,7 @@ import ru.misterparser.bonds.model.Bond;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -52,6 +53,8 @@ public class BondRepository {
             bond.setProfitOffer(rs.getBigDecimal("profit_offer"));
             bond.setProfitNetOffer(rs.getBigDecimal("profit_net_offer"));
             bond.setAnnualYieldOffer(rs.getBigDecimal("annual_yield_offer"));
+            bond.setDaysToMaturity(rs.getObject("days_to_maturity", Integer.class));
+            bond.setDaysToOffer(rs.getObject("days_to_offer", Integer.class));
             // Отдельные даты обновления исходных сущностей
             bond.setMoexUpdatedAt(rs.getTimestamp("moex_updated_at") != null ? rs.getTimestamp("moex_updated_at").toLocalDateTime() : null);
             bond.setTbankBondsUpdatedAt(rs.getTimestamp("tbank_bonds_updated_at") != null ? rs.getTimestamp("tbank_bonds_updated_at").toLocalDateTime() : null);
@@ -78,6 +81,18 @@ public class BondRepository {
         return bonds.isEmpty() ? Optional.empty() : Optional.of(bonds.get(0));
     }
 
+    /**
+     * Облигации по списку ISIN одним запросом к представлению bonds
+     */
+    public List<Bond> findByIsins(Collection<String> isins) {
+        if (isins.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("SELECT * FROM bonds WHERE isin = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", isins.toArray())),
+                bondRowMapper);
+    }
+
     public long count() {
         return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM bonds", Long.class);
     }
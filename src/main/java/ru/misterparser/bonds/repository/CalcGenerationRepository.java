@@ -0,0 +1,76 @@
+package ru.misterparser.bonds.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Поколения расчета bonds_calc и указатель на текущее опубликованное поколение
+ */
+@Repository
+@RequiredArgsConstructor
+public class CalcGenerationRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Регистрирует новое (еще не опубликованное) поколение и возвращает его номер.
+     * Инкрементальное поколение продолжает цепочку previousGeneration и наследует ее базовое поколение,
+     * полное (previousGeneration = null) само становится базовым.
+     */
+    public long createGeneration(Long previousGeneration) {
+        return jdbcTemplate.queryForObject("INSERT INTO calc_generation (id, base_generation) " +
+                "SELECT id, COALESCE((SELECT base_generation FROM calc_generation WHERE id = ?), id) " +
+                "FROM (SELECT nextval('calc_generation_id_seq') AS id) seq RETURNING id",
+                Long.class, previousGeneration);
+    }
+
+    public long findCurrentGeneration() {
+        return jdbcTemplate.queryForObject("SELECT generation FROM calc_current_generation WHERE id = 1", Long.class);
+    }
+
+    /**
+     * Переключает указатель на поколение одним UPDATE. Указатель не сдвигается назад,
+     * если параллельный прогон уже опубликовал более новое поколение.
+     *
+     * @return true, если поколение стало текущим
+     */
+    public boolean publish(long generation) {
+        jdbcTemplate.update("UPDATE calc_generation SET published_at = CURRENT_TIMESTAMP, " +
+                "bonds_count = (SELECT COUNT(*) FROM bonds_calc WHERE generation = ?) WHERE id = ?",
+                generation, generation);
+        return jdbcTemplate.update("UPDATE calc_current_generation SET generation = ?, " +
+                "base_generation = (SELECT base_generation FROM calc_generation WHERE id = ?) " +
+                "WHERE id = 1 AND generation < ?",
+                generation, generation, generation) > 0;
+    }
+
+    /**
+     * Базовое (полное) поколение, от которого ведется цепочка поколения
+     */
+    public long findBaseGeneration(long generation) {
+        return jdbcTemplate.queryForObject("SELECT base_generation FROM calc_generation WHERE id = ?",
+                Long.class, generation);
+    }
+
+    /**
+     * Самое старое из последних keep опубликованных поколений - все, что старше, можно удалять
+     */
+    public Optional<Long> findOldestKeptGeneration(int keep) {
+        List<Long> generations = jdbcTemplate.queryForList(
+                "SELECT id FROM calc_generation WHERE published_at IS NOT NULL ORDER BY id DESC OFFSET ? LIMIT 1",
+                Long.class, Math.max(0, keep - 1));
+        return generations.isEmpty() ? Optional.empty() : Optional.of(generations.get(0));
+    }
+
+    /**
+     * Удаляет поколения старше указанного, в которых не осталось строк bonds_calc
+     */
+    public int deleteEmptyGenerationsBefore(long generation) {
+        return jdbcTemplate.update("DELETE FROM calc_generation g WHERE g.id < ? " +
+                "AND NOT EXISTS (SELECT 1 FROM bonds_calc b WHERE b.generation = g.id)", generation);
+    }
+}
@@ -1,6 +1,7 @@
 package ru.misterparser.bonds.repository;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -12,6 +13,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -19,6 +21,24 @@ import java.util.Optional;
 @Repository
 public class MoexBondRepository {
 
+    private static final String UPSERT_SQL = "INSERT INTO moex_bonds (isin, short_name, coupon_value, maturity_date, face_value, " +
+            "coupon_frequency, coupon_length, coupon_days_passed, offer_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (isin) DO UPDATE SET " +
+            "short_name = EXCLUDED.short_name, " +
+            "coupon_value = EXCLUDED.coupon_value, " +
+            "maturity_date = EXCLUDED.maturity_date, " +
+            "face_value = EXCLUDED.face_value, " +
+            "coupon_frequency = EXCLUDED.coupon_frequency, " +
+            "coupon_length = EXCLUDED.coupon_length, " +
+            "coupon_days_passed = EXCLUDED.coupon_days_passed, " +
+            "offer_date = EXCLUDED.offer_date, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "WHERE (moex_bonds.short_name, moex_bonds.coupon_value, moex_bonds.maturity_date, moex_bonds.face_value, " +
+            "moex_bonds.coupon_frequency, moex_bonds.coupon_length, moex_bonds.coupon_days_passed, moex_bonds.offer_date) " +
+            "IS DISTINCT FROM (EXCLUDED.short_name, EXCLUDED.coupon_value, EXCLUDED.maturity_date, EXCLUDED.face_value, " +
+            "EXCLUDED.coupon_frequency, EXCLUDED.coupon_length, EXCLUDED.coupon_days_passed, EXCLUDED.offer_date)";
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
@@ -67,6 +87,45 @@ public class MoexBondRepository {
         }
     }
 
+    /**
+     * Сохраняет пачку облигаций одним JDBC batch-запросом INSERT ... ON CONFLICT (isin).
+     * Строка обновляется только если изменилось хотя бы одно поле, поэтому updated_at неизменившихся облигаций
+     * не сдвигается и инкрементальный расчет их не пересчитывает.
+     *
+     * @return число вставленных или измененных строк
+     */
+    public int upsertAll(List<MoexBond> bonds) {
+        if (bonds.isEmpty()) {
+            return 0;
+        }
+        int[] counts = jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                MoexBond bond = bonds.get(i);
+                ps.setString(1, bond.getIsin());
+                ps.setString(2, bond.getShortName());
+                ps.setBigDecimal(3, bond.getCouponValue());
+                ps.setDate(4, bond.getMaturityDate() != null ? java.sql.Date.valueOf(bond.getMaturityDate()) : null);
+                ps.setBigDecimal(5, bond.getFaceValue());
+                ps.setObject(6, bond.getCouponFrequency(), Types.INTEGER);
+                ps.setObject(7, bond.getCouponLength(), Types.INTEGER);
+                ps.setObject(8, bond.getCouponDaysPassed(), Types.INTEGER);
+                ps.setDate(9, bond.getOfferDate() != null ? java.sql.Date.valueOf(bond.getOfferDate()) : null);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return bonds.size();
+            }
+        });
+        int changed = 0;
+        for (int count : counts) {
+            // SUCCESS_NO_INFO (-2) - драйвер не вернул число строк; считаем строку измененной
+            changed += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return changed;
+    }
+
     private MoexBond create(MoexBond bond) {
         String sql = "INSERT INTO moex_bonds (isin, short_name, coupon_value, maturity_date, face_value, " +
                     "coupon_frequency, coupon_length, coupon_days_passed, offer_date) " +
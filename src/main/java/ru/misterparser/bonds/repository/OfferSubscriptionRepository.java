@@ -94,6 +94,13 @@ public class OfferSubscriptionRepository {
         return jdbcTemplate.query(sql, subscriptionRowMapper);
     }
 
+    /**
+     * ISIN всех облигаций, на оферты которых есть подписки
+     */
+    public List<String> findAllIsins() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT isin FROM offer_subscription", String.class);
+    }
+
     /**
      * Получает количество подписок пользователя
      */
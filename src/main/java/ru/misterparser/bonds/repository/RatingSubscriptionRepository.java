@@ -15,6 +15,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -172,6 +174,27 @@ public class RatingSubscriptionRepository {
         return jdbcTemplate.query(sql, subscriptionRowMapper);
     }
 
+    /**
+     * Подписки из списка ids, по которым наступило время отправки
+     */
+    public List<RatingSubscription> findSubscriptionsToSend(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String sql = "SELECT * FROM rating_subscription WHERE enabled = true AND id IN (" + placeholders + ") AND " +
+                    "(last_sent_at IS NULL OR last_sent_at <= CURRENT_TIMESTAMP - INTERVAL '1 hour' * period_hours) " +
+                    "ORDER BY telegram_user_id, id";
+        return jdbcTemplate.query(sql, subscriptionRowMapper, ids.toArray());
+    }
+
+    /**
+     * Все включенные подписки (для планировщика отправки)
+     */
+    public List<RatingSubscription> findEnabled() {
+        return jdbcTemplate.query("SELECT * FROM rating_subscription WHERE enabled = true", subscriptionRowMapper);
+    }
+
     /**
      * Обновляет время последней отправки подписки
      */
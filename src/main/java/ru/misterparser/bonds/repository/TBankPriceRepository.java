@@ -2,13 +2,16 @@ package ru.misterparser.bonds.repository;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.misterparser.bonds.model.TBankPrice;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,17 +32,20 @@ public class TBankPriceRepository {
         }
     };
 
+    private static final String UPSERT_SQL = "INSERT INTO tbank_prices (figi, price_ask, price_bid) " +
+            "VALUES (?, ?, ?) " +
+            "ON CONFLICT (figi) " +
+            "DO UPDATE SET " +
+            "price_ask = EXCLUDED.price_ask, " +
+            "price_bid = EXCLUDED.price_bid, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            // updated_at сдвигается только при изменении цены - по нему работает инкрементальный расчет
+            "WHERE tbank_prices.price_ask IS DISTINCT FROM EXCLUDED.price_ask " +
+            "OR tbank_prices.price_bid IS DISTINCT FROM EXCLUDED.price_bid";
+
     public void saveOrUpdate(TBankPrice price) {
         try {
-            String sql = "INSERT INTO tbank_prices (figi, price_ask, price_bid) " +
-                    "VALUES (?, ?, ?) " +
-                    "ON CONFLICT (figi) " +
-                    "DO UPDATE SET " +
-                    "price_ask = EXCLUDED.price_ask, " +
-                    "price_bid = EXCLUDED.price_bid, " +
-                    "updated_at = CURRENT_TIMESTAMP";
-            
-            jdbcTemplate.update(sql,
+            jdbcTemplate.update(UPSERT_SQL,
                 price.getFigi(),
                 price.getPriceAsk(),
                 price.getPriceBid()
@@ -49,6 +55,40 @@ public class TBankPriceRepository {
         }
     }
 
+    /**
+     * Сохраняет пачку цен одним JDBC batch-запросом
+     *
+     * @return FIGI, цены которых вставлены или изменились
+     */
+    public List<String> saveAll(List<TBankPrice> prices) {
+        try {
+            int[] counts = jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    TBankPrice price = prices.get(i);
+                    ps.setString(1, price.getFigi());
+                    ps.setBigDecimal(2, price.getPriceAsk());
+                    ps.setBigDecimal(3, price.getPriceBid());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return prices.size();
+                }
+            });
+            List<String> changed = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                // SUCCESS_NO_INFO - драйвер не вернул число строк; считаем цену измененной
+                if (counts[i] != 0) {
+                    changed.add(prices.get(i).getFigi());
+                }
+            }
+            return changed;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Failed to save T-Bank prices batch of " + prices.size(), e);
+        }
+    }
+
     public List<TBankPrice> findAll() {
         try {
             String sql = "SELECT * FROM tbank_prices ORDER BY figi";
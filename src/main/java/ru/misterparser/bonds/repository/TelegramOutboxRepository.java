@@ -0,0 +1,108 @@
+package ru.misterparser.bonds.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.misterparser.bonds.model.TelegramOutboxMessage;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Очередь исходящих сообщений Telegram (таблица telegram_outbox).
+ * Статусы: PENDING - ожидает отправки, SENDING - выдано обработчику, SENT - отправлено, FAILED - попытки исчерпаны.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TelegramOutboxRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RowMapper<TelegramOutboxMessage> messageRowMapper = (rs, rowNum) -> {
+        TelegramOutboxMessage message = new TelegramOutboxMessage();
+        message.setId(rs.getLong("id"));
+        message.setChatId(rs.getLong("chat_id"));
+        message.setText(rs.getString("text"));
+        message.setParseMode(rs.getString("parse_mode"));
+        message.setAttempts(rs.getInt("attempts"));
+        message.setCreatedAt(rs.getTimestamp("created_at") != null ? rs.getTimestamp("created_at").toLocalDateTime() : null);
+        return message;
+    };
+
+    public void enqueue(Long chatId, String text, String parseMode) {
+        jdbcTemplate.update("INSERT INTO telegram_outbox (chat_id, text, parse_mode) VALUES (?, ?, ?)",
+                chatId, text, parseMode);
+    }
+
+    /**
+     * Забирает до limit сообщений, время отправки которых наступило, переводя их в SENDING.
+     * Сообщения, созданные раньше createdAfter, устарели и не забираются.
+     * SKIP LOCKED позволяет нескольким экземплярам приложения разбирать очередь без дублей.
+     */
+    public List<TelegramOutboxMessage> claimDue(int limit, LocalDateTime createdAfter) {
+        return jdbcTemplate.query(
+                "UPDATE telegram_outbox SET status = 'SENDING', attempts = attempts + 1, claimed_at = CURRENT_TIMESTAMP " +
+                "WHERE id IN (SELECT id FROM telegram_outbox WHERE status = 'PENDING' AND next_attempt_at <= CURRENT_TIMESTAMP " +
+                "AND created_at >= ? ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "RETURNING id, chat_id, text, parse_mode, attempts, created_at",
+                messageRowMapper, Timestamp.valueOf(createdAfter), limit);
+    }
+
+    public void markSent(long id) {
+        jdbcTemplate.update("UPDATE telegram_outbox SET status = 'SENT', sent_at = CURRENT_TIMESTAMP, last_error = NULL WHERE id = ?", id);
+    }
+
+    public void reschedule(long id, LocalDateTime nextAttemptAt, String error) {
+        jdbcTemplate.update("UPDATE telegram_outbox SET status = 'PENDING', next_attempt_at = ?, last_error = ? WHERE id = ?",
+                Timestamp.valueOf(nextAttemptAt), error, id);
+    }
+
+    /**
+     * Откладывает сообщение, не считая выдачу неудачной попыткой (ограничение частоты, остановка обработчика)
+     */
+    public void defer(long id, LocalDateTime nextAttemptAt, String reason) {
+        jdbcTemplate.update("UPDATE telegram_outbox SET status = 'PENDING', attempts = GREATEST(attempts - 1, 0), " +
+                "next_attempt_at = ?, last_error = ? WHERE id = ?",
+                Timestamp.valueOf(nextAttemptAt), reason, id);
+    }
+
+    public void markFailed(long id, String error) {
+        jdbcTemplate.update("UPDATE telegram_outbox SET status = 'FAILED', last_error = ? WHERE id = ?", error, id);
+    }
+
+    /**
+     * Возвращает в очередь сообщения, выданные обработчику раньше claimedBefore и так и не отправленные
+     * (экземпляр приложения остановился во время отправки)
+     */
+    public int releaseClaimedBefore(LocalDateTime claimedBefore) {
+        return jdbcTemplate.update("UPDATE telegram_outbox SET status = 'PENDING' " +
+                "WHERE status = 'SENDING' AND (claimed_at IS NULL OR claimed_at < ?)", Timestamp.valueOf(claimedBefore));
+    }
+
+    public int deleteSentBefore(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM telegram_outbox WHERE status = 'SENT' AND sent_at < ?", Timestamp.valueOf(before));
+    }
+
+    /**
+     * Удаляет устаревшие неотправленные сообщения
+     */
+    public int deletePendingBefore(LocalDateTime createdBefore) {
+        return jdbcTemplate.update("DELETE FROM telegram_outbox WHERE status = 'PENDING' AND created_at < ?",
+                Timestamp.valueOf(createdBefore));
+    }
+
+    /**
+     * Число сообщений по статусам
+     */
+    public Map<String, Long> countByStatus() {
+        Map<String, Long> counts = new TreeMap<>();
+        jdbcTemplate.query("SELECT status, COUNT(*) AS cnt FROM telegram_outbox GROUP BY status",
+                (RowCallbackHandler) rs -> counts.put(rs.getString("status"), rs.getLong("cnt")));
+        return counts;
+    }
+}
@@ -9,6 +9,7 @@ import ru.misterparser.bonds.model.UserFilterSettings;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -38,6 +39,17 @@ public class UserFilterSettingsRepository {
         }
     }
 
+    /**
+     * Настройки фильтров всех пользователей
+     */
+    public List<UserFilterSettings> findAll() {
+        String sql = "SELECT id, user_id, limit_value, weeks_to_maturity, fee_percent, " +
+                     "yield_range, search_text, show_offer, selected_ratings, " +
+                     "created_at, updated_at " +
+                     "FROM user_filter_settings";
+        return jdbcTemplate.query(sql, new UserFilterSettingsRowMapper());
+    }
+
     /**
      * Сохранить или обновить настройки фильтров пользователя
      */
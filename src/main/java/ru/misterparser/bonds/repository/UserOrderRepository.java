@@ -179,6 +179,13 @@ public class UserOrderRepository {
         return jdbcTemplate.query(sql, orderRowMapper, telegramUserId);
     }
 
+    /**
+     * ISIN облигаций из сделок всех пользователей
+     */
+    public List<String> findAllIsins() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT isin FROM user_orders WHERE isin IS NOT NULL", String.class);
+    }
+
     /**
      * Удалить сделку
      */
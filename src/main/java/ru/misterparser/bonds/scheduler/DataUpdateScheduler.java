@@ -11,6 +11,9 @@ import ru.misterparser.bonds.config.RaExpertConfig;
 import ru.misterparser.bonds.config.TBankConfig;
 import ru.misterparser.bonds.service.*;
 
+import java.time.Duration;
+import java.time.Instant;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
@@ -22,15 +25,23 @@ public class DataUpdateScheduler {
     private final RaExpertService raExpertService;
     private final DohodService dohodService;
     private final CalculationService calculationService;
+    private final TradingCalendarService tradingCalendarService;
+    private final BondUniverseCache bondUniverseCache;
     private final MoexConfig moexConfig;
     private final TBankConfig tBankConfig;
     private final RaExpertConfig raExpertConfig;
     private final DohodConfig dohodConfig;
     private final CalcConfig calcConfig;
 
+    private volatile Instant lastCalculationAt;
+
     @Scheduled(cron = "#{@moexConfig.cron}")
     public void updateMoexData() {
         if (moexConfig.isEnabled()) {
+            if (!tradingCalendarService.isTradingDay()) {
+                log.info("Non-trading day, skipping scheduled MOEX data update");
+                return;
+            }
             log.info("Starting scheduled MOEX data update");
             try {
                 moexService.parseBonds();
@@ -44,6 +55,10 @@ public class DataUpdateScheduler {
     @Scheduled(cron = "#{@tBankConfig.instruments.cron}")
     public void updateTBankInstruments() {
         if (tBankConfig.isEnabled()) {
+            if (!tradingCalendarService.isTradingDay()) {
+                log.info("Non-trading day, skipping scheduled T-Bank instruments update");
+                return;
+            }
             log.info("Starting scheduled T-Bank instruments update");
             try {
                 tBankInstrumentsService.updateBondsData();
@@ -57,6 +72,11 @@ public class DataUpdateScheduler {
     @Scheduled(cron = "#{@tBankConfig.marketdata.cron}")
     public void updateTBankMarketData() {
         if (tBankConfig.isEnabled()) {
+            // Расписание срабатывает круглосуточно, обновление - только во время торговых сессий
+            if (!tBankMarketDataService.isUpdateWindow()) {
+                log.debug("Outside trading sessions, skipping scheduled T-Bank market data update");
+                return;
+            }
             log.info("Starting scheduled T-Bank market data update");
             try {
                 tBankMarketDataService.updatePrices();
@@ -95,9 +115,19 @@ public class DataUpdateScheduler {
 
     @Scheduled(fixedDelayString = "#{@calcConfig.periodMinutes * 60000}")
     public void calculateBonds() {
+        // Вне торговых сессий цены не меняются - расчет реже, раз в off-session-period-minutes
+        Instant now = Instant.now();
+        if (lastCalculationAt != null && !tradingCalendarService.isTradingNow()
+                && Duration.between(lastCalculationAt, now).toMinutes() < calcConfig.getOffSessionPeriodMinutes()) {
+            log.debug("Outside trading sessions, skipping scheduled bonds calculation");
+            return;
+        }
+        lastCalculationAt = now;
         log.info("Starting scheduled bonds calculation");
         try {
             calculationService.calculateAllBonds();
+            // Снимок облигаций перечитывается сразу после публикации нового поколения, а не на первом запросе
+            bondUniverseCache.getUniverse();
             log.info("Scheduled bonds calculation completed");
         } catch (Exception e) {
             log.error("Error during scheduled bonds calculation", e);
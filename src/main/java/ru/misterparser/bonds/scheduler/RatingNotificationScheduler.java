@@ -2,30 +2,209 @@ package ru.misterparser.bonds.scheduler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.model.RatingSubscription;
+import ru.misterparser.bonds.repository.RatingSubscriptionRepository;
 import ru.misterparser.bonds.service.RatingNotificationService;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик отправки по подпискам на рейтинг.
+ * Время следующей отправки каждой включенной подписки (last_sent_at + period_hours) хранится в памяти
+ * в упорядоченной очереди; таймер взводится на ближайшее время, и подписки отправляются в срок без опроса БД.
+ * Очередь загружается при старте, обновляется контроллером подписок при изменениях и периодически
+ * сверяется с БД.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class RatingNotificationScheduler {
 
+    /** Повтор для подписок, по которым отправка не состоялась (пользователь отключен, нет облигаций, ошибка) */
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(5);
+
     private final RatingNotificationService ratingNotificationService;
+    private final RatingSubscriptionRepository subscriptionRepository;
+
+    private final NavigableSet<Due> queue = new TreeSet<>(
+            Comparator.comparing((Due due) -> due.dueAt).thenComparing(due -> due.subscriptionId));
+    private final Map<Long, Due> dueById = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rating-subscription-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> wakeUp;
+    private LocalDateTime wakeUpAt;
+
+    private static final class Due {
+        private final long subscriptionId;
+        private final LocalDateTime dueAt;
+
+        private Due(long subscriptionId, LocalDateTime dueAt) {
+            this.subscriptionId = subscriptionId;
+            this.dueAt = dueAt;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        reconcile();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
 
     /**
-     * Запускается каждый час для проверки подписок на рейтинг
+     * Сверка очереди с БД: перестраивает очередь по всем включенным подпискам
      */
-    @Scheduled(cron = "0 */5 * * * *") // каждые 5 минут
-    public void processRatingSubscriptions() {
-        log.info("Запуск планировщика уведомлений по подпискам на рейтинг");
-        
+    @Scheduled(fixedDelayString = "${rating-subscriptions.reconcile-interval-ms:1800000}",
+               initialDelayString = "${rating-subscriptions.reconcile-interval-ms:1800000}")
+    public void reconcile() {
         try {
-            ratingNotificationService.processRatingSubscriptions();
+            List<RatingSubscription> subscriptions = subscriptionRepository.findEnabled();
+            synchronized (this) {
+                queue.clear();
+                dueById.clear();
+                subscriptions.forEach(subscription -> add(subscription, null));
+                rearm();
+            }
+            log.info("Планировщик подписок на рейтинг: {} включенных подписок, ближайшая отправка {}",
+                    subscriptions.size(), wakeUpAt);
+        } catch (Exception e) {
+            log.error("Ошибка сверки планировщика подписок на рейтинг с БД", e);
+        }
+    }
+
+    /**
+     * Ставит (или переставляет) подписку в очередь; выключенная подписка удаляется из очереди
+     */
+    public synchronized void schedule(RatingSubscription subscription) {
+        remove(subscription.getId());
+        add(subscription, null);
+        rearm();
+    }
+
+    /**
+     * Перечитывает подписку из БД и переставляет ее в очереди
+     */
+    public void refresh(Long subscriptionId) {
+        subscriptionRepository.findById(subscriptionId).ifPresentOrElse(this::schedule, () -> unschedule(subscriptionId));
+    }
+
+    public synchronized void unschedule(Long subscriptionId) {
+        remove(subscriptionId);
+        rearm();
+    }
+
+    private void fire() {
+        List<Long> dueIds = new ArrayList<>();
+        synchronized (this) {
+            LocalDateTime now = LocalDateTime.now();
+            while (!queue.isEmpty() && !queue.first().dueAt.isAfter(now)) {
+                Due due = queue.pollFirst();
+                dueById.remove(due.subscriptionId);
+                dueIds.add(due.subscriptionId);
+            }
+        }
+        try {
+            if (!dueIds.isEmpty()) {
+                ratingNotificationService.processRatingSubscriptions(dueIds);
+            }
         } catch (Exception e) {
             log.error("Ошибка при выполнении планировщика уведомлений по подпискам на рейтинг", e);
+        } finally {
+            rescheduleAfterSend(dueIds);
+        }
+    }
+
+    /**
+     * Возвращает отправленные подписки в очередь по новому last_sent_at; если отправка не состоялась,
+     * повтор не раньше чем через RETRY_DELAY
+     */
+    private void rescheduleAfterSend(List<Long> subscriptionIds) {
+        LocalDateTime notBefore = LocalDateTime.now().plus(RETRY_DELAY);
+        for (Long subscriptionId : subscriptionIds) {
+            try {
+                subscriptionRepository.findById(subscriptionId).ifPresent(subscription -> {
+                    synchronized (this) {
+                        remove(subscriptionId);
+                        add(subscription, notBefore);
+                    }
+                });
+            } catch (Exception e) {
+                log.error("Ошибка перепланирования подписки {}", subscriptionId, e);
+            }
+        }
+        synchronized (this) {
+            rearm();
+        }
+    }
+
+    private void add(RatingSubscription subscription, LocalDateTime notBefore) {
+        if (!subscription.isEnabled()) {
+            return;
+        }
+        LocalDateTime dueAt = subscription.getLastSentAt() != null
+                ? subscription.getLastSentAt().plusHours(subscription.getPeriodHours())
+                : LocalDateTime.now();
+        if (notBefore != null && dueAt.isBefore(notBefore)) {
+            dueAt = notBefore;
+        }
+        Due due = new Due(subscription.getId(), dueAt);
+        queue.add(due);
+        dueById.put(subscription.getId(), due);
+    }
+
+    private void remove(Long subscriptionId) {
+        Due due = dueById.remove(subscriptionId);
+        if (due != null) {
+            queue.remove(due);
+        }
+    }
+
+    /**
+     * Взводит таймер на ближайшее время отправки
+     */
+    private void rearm() {
+        if (queue.isEmpty()) {
+            cancelWakeUp();
+            return;
+        }
+        LocalDateTime next = queue.first().dueAt;
+        if (wakeUp != null && !wakeUp.isDone() && next.equals(wakeUpAt)) {
+            return;
+        }
+        cancelWakeUp();
+        long delay = Math.max(0, Duration.between(LocalDateTime.now(), next).toMillis());
+        wakeUp = timer.schedule(this::fire, delay, TimeUnit.MILLISECONDS);
+        wakeUpAt = next;
+    }
+
+    private void cancelWakeUp() {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+            wakeUpAt = null;
         }
-        
-        log.info("Планировщик уведомлений по подпискам на рейтинг завершен");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,210 @@
+package ru.misterparser.bonds.service;
+
+import ru.misterparser.bonds.model.Bond;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Колоночный индекс снимка облигаций для фильтра скринера.
+ * Доходности, даты (epoch day) и коды рейтингов хранятся в примитивных массивах, для фильтров по сроку
+ * и рейтингу есть битовые карты по неделям дат погашения/оферты и по значениям рейтинга; текстовый поиск
+ * выполняется по BondSearchIndex с теми же позициями. Фильтры сначала объединяются операциями над
+ * битовыми картами, затем по оставшимся кандидатам проходит фильтр доходности.
+ */
+public final class BondColumnIndex {
+
+    /** Дата отсутствует */
+    static final int NO_DATE = Integer.MIN_VALUE;
+    /** Рейтинг отсутствует */
+    static final short NO_RATING = -1;
+    /** Границы дат для диапазонов без ограничения */
+    private static final long MIN_DAY = -(1L << 28);
+    private static final long MAX_DAY = 1L << 28;
+
+    private final Bond[] bonds;
+    private final double[] yield;
+    private final double[] offerYield;
+    private final int[] maturityDay;
+    private final int[] offerDay;
+    private final short[] ratingCode;
+    // Битовые карты: неделя от эпохи (floorDiv(epoch day, 7)) даты погашения/оферты и значение рейтинга
+    private final NavigableMap<Integer, BitSet> maturityWeeks = new TreeMap<>();
+    private final NavigableMap<Integer, BitSet> offerWeeks = new TreeMap<>();
+    private final Map<String, BitSet> ratingBits = new HashMap<>();
+
+    private BondColumnIndex(int size) {
+        this.bonds = new Bond[size];
+        this.yield = new double[size];
+        this.offerYield = new double[size];
+        this.maturityDay = new int[size];
+        this.offerDay = new int[size];
+        this.ratingCode = new short[size];
+    }
+
+    public static BondColumnIndex build(List<Bond> bonds) {
+        BondColumnIndex index = new BondColumnIndex(bonds.size());
+        for (int i = 0; i < bonds.size(); i++) {
+            Bond bond = bonds.get(i);
+            index.bonds[i] = bond;
+            index.yield[i] = toDouble(bond.getAnnualYield());
+            // Доходность по оферте используется при наличии даты оферты (как в getEffectiveYield)
+            index.offerYield[i] = bond.getOfferDate() != null ? toDouble(bond.getAnnualYieldOffer()) : Double.NaN;
+            index.maturityDay[i] = toEpochDay(bond.getMaturityDate());
+            index.offerDay[i] = toEpochDay(bond.getOfferDate());
+            index.ratingCode[i] = bond.getRatingCode() != null ? bond.getRatingCode().shortValue() : NO_RATING;
+            addToWeek(index.maturityWeeks, index.maturityDay[i], i);
+            addToWeek(index.offerWeeks, index.offerDay[i], i);
+            if (bond.getRatingValue() != null) {
+                index.ratingBits.computeIfAbsent(bond.getRatingValue(), value -> new BitSet()).set(i);
+            }
+        }
+        return index;
+    }
+
+    public int size() {
+        return bonds.length;
+    }
+
+    public Bond bond(int position) {
+        return bonds[position];
+    }
+
+    /**
+     * Числовой код рейтинга или NO_RATING
+     */
+    public short ratingCode(int position) {
+        return ratingCode[position];
+    }
+
+    /**
+     * Эффективная доходность каждой облигации с учетом оферты; NaN, если доходность не определена
+     */
+    public double[] effectiveYields(boolean includeOffer) {
+        double[] result = new double[bonds.length];
+        for (int i = 0; i < result.length; i++) {
+            double offer = offerYield[i];
+            result[i] = includeOffer && offer == offer ? offer : yield[i];
+        }
+        return result;
+    }
+
+    /**
+     * Облигации, у которых число полных недель до погашения (или до будущей оферты при includeOffer)
+     * в диапазоне [minWeeks, maxWeeks]. ChronoUnit.WEEKS.between для дат - целое деление числа дней на 7
+     * с отбрасыванием дробной части, поэтому диапазон недель переводится в диапазон дат.
+     */
+    public BitSet selectWeeksToTarget(boolean includeOffer, LocalDate today, int minWeeks, int maxWeeks) {
+        long todayDay = today.toEpochDay();
+        long from = todayDay + (minWeeks > 0 ? 7L * minWeeks : 7L * minWeeks - 6);
+        long to = todayDay + (maxWeeks >= 0 ? 7L * maxWeeks + 6 : 7L * maxWeeks);
+        BitSet byMaturity = selectDays(maturityWeeks, maturityDay, from, to);
+        if (!includeOffer) {
+            return byMaturity;
+        }
+        // С офертой срок считается до оферты, если она в будущем, иначе до погашения
+        BitSet futureOffer = selectDays(offerWeeks, offerDay, todayDay + 1, MAX_DAY);
+        BitSet result = selectDays(offerWeeks, offerDay, Math.max(from, todayDay + 1), to);
+        byMaturity.andNot(futureOffer);
+        result.or(byMaturity);
+        return result;
+    }
+
+    /**
+     * Облигации с одним из выбранных значений рейтинга
+     */
+    public BitSet selectRatings(Collection<String> ratingValues) {
+        BitSet result = new BitSet(bonds.length);
+        for (String ratingValue : ratingValues) {
+            BitSet bits = ratingBits.get(ratingValue);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Последний проход по кандидатам после битовых фильтров: позиции с определенной доходностью
+     * в диапазоне [min, max] (границы включительно, null - без границы).
+     * yields[i] должно совпадать с exactYield.apply(i).doubleValue(); точное значение нужно только тогда,
+     * когда double-доходность совпадает с double-границей, поэтому результат совпадает со сравнением BigDecimal.
+     *
+     * @return число выбранных позиций в selection
+     */
+    public int selectYieldRange(double[] yields, IntFunction<BigDecimal> exactYield,
+                                BigDecimal min, BigDecimal max, BitSet candidates, int[] selection) {
+        double minValue = min != null ? min.doubleValue() : Double.NEGATIVE_INFINITY;
+        double maxValue = max != null ? max.doubleValue() : Double.POSITIVE_INFINITY;
+        int count = 0;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            double value = yields[i];
+            if (value != value || value < minValue || value > maxValue) {
+                continue;
+            }
+            if (value == minValue && exactYield.apply(i).compareTo(min) < 0) {
+                continue;
+            }
+            if (value == maxValue && exactYield.apply(i).compareTo(max) > 0) {
+                continue;
+            }
+            selection[count++] = i;
+        }
+        return count;
+    }
+
+    /**
+     * Облигации с датой в диапазоне [from, to]: недели, целиком входящие в диапазон, объединяются по битовым
+     * картам, в крайних неделях даты проверяются по облигациям
+     */
+    private BitSet selectDays(NavigableMap<Integer, BitSet> weeks, int[] days, long from, long to) {
+        BitSet result = new BitSet(bonds.length);
+        from = Math.max(from, MIN_DAY);
+        to = Math.min(to, MAX_DAY);
+        if (from > to) {
+            return result;
+        }
+        int fromWeek = week(from);
+        int toWeek = week(to);
+        for (Map.Entry<Integer, BitSet> entry : weeks.subMap(fromWeek, true, toWeek, true).entrySet()) {
+            long weekStart = 7L * entry.getKey();
+            BitSet bits = entry.getValue();
+            if (weekStart >= from && weekStart + 6 <= to) {
+                result.or(bits);
+                continue;
+            }
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                if (days[i] >= from && days[i] <= to) {
+                    result.set(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int week(long epochDay) {
+        return (int) Math.floorDiv(epochDay, 7L);
+    }
+
+    private static void addToWeek(NavigableMap<Integer, BitSet> weeks, int epochDay, int position) {
+        if (epochDay != NO_DATE) {
+            weeks.computeIfAbsent(week(epochDay), key -> new BitSet()).set(position);
+        }
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return date != null ? (int) date.toEpochDay() : NO_DATE;
+    }
+}
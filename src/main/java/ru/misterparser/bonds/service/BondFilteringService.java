@@ -4,21 +4,34 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.misterparser.bonds.model.Bond;
-import ru.misterparser.bonds.repository.BondRepository;
 
 import java.math.BigDecimal;
-import java.util.Comparator;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class BondFilteringService {
 
-    private final BondRepository bondRepository;
+    private final BondUniverseCache bondUniverseCache;
     private final CalculationService calculationService;
+    private final CustomFeeCalculator customFeeCalculator;
+    private final ScreenerResultCache screenerResultCache;
+
+    private static final BigDecimal MAX_YIELD = BigDecimal.valueOf(50);
 
     /**
      * Параметры для фильтрации и сортировки облигаций
@@ -36,135 +49,178 @@ public class BondFilteringService {
         private List<String> selectedRatings;
     }
 
+    /**
+     * Доходности облигаций снимка (NaN - не определена) и их точные значения
+     */
+    private static class YieldVector {
+        private final double[] values;
+        private final IntFunction<BigDecimal> exact;
+
+        private YieldVector(double[] values, IntFunction<BigDecimal> exact) {
+            this.values = values;
+            this.exact = exact;
+        }
+    }
+
+    /**
+     * Наборы параметров с одинаковыми доходностями: комиссия и учет оферты
+     */
+    @Value
+    private static class YieldGroup {
+        BigDecimal customFeePercent;
+        boolean includeOffer;
+
+        static YieldGroup of(FilterParams params) {
+            BigDecimal fee = params.getCustomFeePercent();
+            return new YieldGroup(fee != null ? fee.stripTrailingZeros() : null, BondFilteringService.isIncludeOffer(params));
+        }
+    }
+
     /**
      * Получает отфильтрованный и отсортированный список облигаций
      */
     public List<Bond> getFilteredAndSortedBonds(FilterParams params) {
-        // Получаем все облигации для фильтрации в бэкенде
-        List<Bond> originalBonds = bondRepository.findAllBondsForFiltering();
-        
-        // Пересчитываем с кастомной комиссией если нужно
-        List<Bond> bonds = originalBonds;
-        if (params.getCustomFeePercent() != null) {
-            bonds = originalBonds.stream()
-                .map(bond -> calculationService.calculateBondWithCustomFee(bond, params.getCustomFeePercent()))
-                .collect(Collectors.toList());
-        }
-        
-        boolean showOffer = params.getIncludeOffer() != null ? params.getIncludeOffer() : false;
-        
-        // Применяем все фильтры в бэкенде
-        return bonds.stream()
-            .filter(bond -> filterBond(bond, params))
-            .sorted(createBondComparator(showOffer))
-            .limit(params.getLimit() != null ? params.getLimit() : Integer.MAX_VALUE)
-            .collect(Collectors.toList());
+        // Одинаковые запросы в пределах снимка облигаций обслуживаются из кэша результатов
+        BondUniverseCache.BondUniverse universe = bondUniverseCache.getUniverse();
+        ScreenerResultCache.Key key = ScreenerResultCache.Key.of(params, universe.getGeneration(), LocalDate.now(), MAX_YIELD);
+        return screenerResultCache.get(universe, key, () -> filterAndSortBonds(universe, params));
     }
 
     /**
-     * Фильтрует облигацию по всем параметрам
+     * Фильтрация и сортировка по индексам снимка облигаций в памяти
      */
-    private boolean filterBond(Bond bond, FilterParams params) {
-        boolean showOffer = params.getIncludeOffer() != null ? params.getIncludeOffer() : false;
-        
-        // Получаем доходность с учётом оферты
-        BigDecimal yield = getEffectiveYield(bond, showOffer);
-        
-        if (yield == null) return false;
+    private List<Bond> filterAndSortBonds(BondUniverseCache.BondUniverse universe, FilterParams params) {
+        // Срок, рейтинг и текстовый поиск - операциями над битовыми картами до расчета доходности
+        BitSet candidates = preFilterBonds(universe, params, isIncludeOffer(params));
+        YieldVector yields = computeYields(universe.getColumns(), candidates, params.getCustomFeePercent(), isIncludeOffer(params));
+        return rankBonds(universe.getColumns(), params, candidates, yields, new HashMap<>());
+    }
+
+    /**
+     * Пакетная фильтрация для нескольких наборов параметров (подписки на рейтинги) по одному снимку облигаций.
+     * Наборы группируются по комиссии и учету оферты: доходности группы считаются один раз
+     * для объединения кандидатов всех ее наборов, затем для каждого набора выполняются свои фильтры и выбор первых N.
+     *
+     * @return результаты в порядке ключей paramsByKey
+     */
+    public <T> Map<T, List<Bond>> getFilteredAndSortedBonds(Map<T, FilterParams> paramsByKey) {
+        BondUniverseCache.BondUniverse universe = bondUniverseCache.getUniverse();
+        BondColumnIndex index = universe.getColumns();
         
-        // Фильтр по доходности
-        if (params.getMinYield() != null && yield.compareTo(params.getMinYield()) < 0) {
-            return false;
-        }
-        if (params.getMaxYield() != null && yield.compareTo(params.getMaxYield()) > 0) {
-            return false;
-        }
+        Map<T, BitSet> candidatesByKey = new HashMap<>();
+        Map<YieldGroup, List<T>> groups = new LinkedHashMap<>();
+        paramsByKey.forEach((key, params) -> {
+            candidatesByKey.put(key, preFilterBonds(universe, params, isIncludeOffer(params)));
+            groups.computeIfAbsent(YieldGroup.of(params), group -> new ArrayList<>()).add(key);
+        });
         
-        // Ограничение по максимальной доходности 50%
-        if (yield.compareTo(BigDecimal.valueOf(50)) > 0) {
-            return false;
-        }
+        Map<T, List<Bond>> results = new HashMap<>();
+        groups.forEach((group, keys) -> {
+            BitSet union = new BitSet(index.size());
+            keys.forEach(key -> union.or(candidatesByKey.get(key)));
+            FilterParams first = paramsByKey.get(keys.get(0));
+            YieldVector yields = computeYields(index, union, first.getCustomFeePercent(), group.isIncludeOffer());
+            // Облигации с кастомной комиссией общие для всех наборов группы
+            Map<Integer, Bond> feeAppliedBonds = new HashMap<>();
+            keys.forEach(key -> results.put(key,
+                rankBonds(index, paramsByKey.get(key), candidatesByKey.get(key), yields, feeAppliedBonds)));
+        });
+        log.debug("Batch screener evaluation: {} parameter sets in {} yield groups", paramsByKey.size(), groups.size());
         
-        // Фильтр по сроку погашения
-        if (!filterByMaturity(bond, params, showOffer)) {
-            return false;
-        }
+        Map<T, List<Bond>> ordered = new LinkedHashMap<>();
+        paramsByKey.keySet().forEach(key -> ordered.put(key, results.get(key)));
+        return ordered;
+    }
+
+    /**
+     * Фильтр доходности по кандидатам и выбор первых limit облигаций; с кастомной комиссией
+     * полный набор показателей считается только для облигаций из результата
+     */
+    private List<Bond> rankBonds(BondColumnIndex index, FilterParams params, BitSet candidates, YieldVector yields,
+                                 Map<Integer, Bond> feeAppliedBonds) {
+        // Фильтр по доходности с ограничением по максимальной доходности 50%
+        BigDecimal maxYield = params.getMaxYield() != null ? params.getMaxYield().min(MAX_YIELD) : MAX_YIELD;
+        int[] selection = new int[index.size()];
+        int count = index.selectYieldRange(yields.values, yields.exact, params.getMinYield(), maxYield, candidates, selection);
         
-        // Текстовый поиск
-        if (params.getSearchText() != null && !params.getSearchText().trim().isEmpty()) {
-            String searchPattern = params.getSearchText().trim().toLowerCase();
-            boolean matchFound = (bond.getTicker() != null && bond.getTicker().toLowerCase().contains(searchPattern)) ||
-                               (bond.getShortName() != null && bond.getShortName().toLowerCase().contains(searchPattern));
-            if (!matchFound) {
-                return false;
-            }
-        }
+        // Сортировка по упакованным ключам: при заданном лимите - только первые limit облигаций
+        BondRanking ranking = new BondRanking(index, yields.values, yields.exact, selection, count);
+        int[] ranked = params.getLimit() != null ? ranking.top(params.getLimit()) : ranking.sorted();
         
-        // Фильтр по рейтингу
-        if (params.getSelectedRatings() != null && !params.getSelectedRatings().isEmpty()) {
-            String bondRating = bond.getRatingValue();
-            if (bondRating == null || !params.getSelectedRatings().contains(bondRating)) {
-                return false;
-            }
+        BigDecimal customFeePercent = params.getCustomFeePercent();
+        return Arrays.stream(ranked)
+            .mapToObj(position -> customFeePercent == null
+                ? index.bond(position)
+                : feeAppliedBonds.computeIfAbsent(position,
+                    p -> customFeeCalculator.applyCustomFee(index.bond(p), customFeePercent)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Доходности кандидатов с учётом оферты и кастомной комиссии; считаются один раз на облигацию,
+     * с кастомной комиссией - по коэффициентам из bonds_calc без пересчета и копирования облигации
+     */
+    private YieldVector computeYields(BondColumnIndex index, BitSet candidates, BigDecimal customFeePercent, boolean showOffer) {
+        if (customFeePercent == null) {
+            return new YieldVector(index.effectiveYields(showOffer),
+                position -> getEffectiveYield(index.bond(position), showOffer));
         }
-        
-        return true;
+        BigDecimal[] recalculatedYields = new BigDecimal[index.size()];
+        double[] yields = customFeeYields(index, candidates, customFeePercent, showOffer, recalculatedYields);
+        return new YieldVector(yields, position -> recalculatedYields[position] != null
+            ? recalculatedYields[position] : BigDecimal.valueOf(yields[position]));
     }
 
     /**
-     * Создаёт компаратор для сортировки облигаций (единый алгоритм)
+     * Доходности кандидатов с кастомной комиссией; NaN, если доходность не определена или облигация не кандидат.
+     * Для строк bonds_calc без коэффициентов выполняется полный пересчет, его точная доходность
+     * сохраняется в recalculatedYields.
      */
-    private Comparator<Bond> createBondComparator(boolean includeOffer) {
-        return (b1, b2) -> {
-            // Получаем доходности с учётом оферты
-            BigDecimal yield1 = getEffectiveYield(b1, includeOffer);
-            BigDecimal yield2 = getEffectiveYield(b2, includeOffer);
-            
-            if (yield1 == null && yield2 == null) return 0;
-            if (yield1 == null) return 1;
-            if (yield2 == null) return -1;
-            
-            // Первичная сортировка по FLOOR(доходность) - убывание
-            int floor1 = yield1.intValue();
-            int floor2 = yield2.intValue();
-            int floorCompare = Integer.compare(floor2, floor1);
-            if (floorCompare != 0) return floorCompare;
-            
-            // Вторичная сортировка по рейтингу (надёжные выше)
-            Integer rating1 = b1.getRatingCode();
-            Integer rating2 = b2.getRatingCode();
-            if (rating1 != null && rating2 != null) {
-                int ratingCompare = Integer.compare(rating1, rating2); // меньше = надёжнее
-                if (ratingCompare != 0) return ratingCompare;
+    private double[] customFeeYields(BondColumnIndex index, BitSet candidates, BigDecimal customFeePercent,
+                                     boolean showOffer, BigDecimal[] recalculatedYields) {
+        double[] yields = new double[index.size()];
+        Arrays.fill(yields, Double.NaN);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Bond bond = index.bond(i);
+            if (customFeeCalculator.isApplicable(bond)) {
+                double yield = customFeeCalculator.effectiveYield(bond, customFeePercent, showOffer);
+                yields[i] = Double.isFinite(yield) ? yield : Double.NaN;
+            } else {
+                BigDecimal yield = getEffectiveYield(calculationService.calculateBondWithCustomFee(bond, customFeePercent), showOffer);
+                recalculatedYields[i] = yield;
+                yields[i] = yield != null ? yield.doubleValue() : Double.NaN;
             }
-            
-            // Третичная сортировка по точной доходности - убывание
-            return yield2.compareTo(yield1);
-        };
+        }
+        return yields;
     }
-    
+
     /**
-     * Фильтрует по сроку погашения с учётом оферты
+     * Фильтры по сроку погашения, тексту и рейтингу - пересечение битовых карт индексов
      */
-    private boolean filterByMaturity(Bond bond, FilterParams params, boolean showOffer) {
+    private BitSet preFilterBonds(BondUniverseCache.BondUniverse universe, FilterParams params, boolean showOffer) {
+        BondColumnIndex index = universe.getColumns();
+        
+        // Фильтр по сроку погашения с учётом оферты
         int minWeeks = params.getMinWeeksToMaturity() != null ? params.getMinWeeksToMaturity() : 0;
         int maxWeeks = params.getMaxWeeksToMaturity() != null ? params.getMaxWeeksToMaturity() : 520;
+        BitSet candidates = index.selectWeeksToTarget(showOffer, LocalDate.now(), minWeeks, maxWeeks);
         
-        java.time.LocalDate targetDate;
-        if (showOffer && bond.getOfferDate() != null && bond.getOfferDate().isAfter(java.time.LocalDate.now())) {
-            targetDate = bond.getOfferDate();
-        } else {
-            targetDate = bond.getMaturityDate();
+        // Фильтр по рейтингу
+        if (params.getSelectedRatings() != null && !params.getSelectedRatings().isEmpty()) {
+            candidates.and(index.selectRatings(params.getSelectedRatings()));
         }
         
-        if (targetDate == null) {
-            return false;
+        // Текстовый поиск по тикеру и названию
+        if (params.getSearchText() != null && !params.getSearchText().trim().isEmpty()) {
+            candidates.and(universe.getSearch().matching(params.getSearchText().trim().toLowerCase(),
+                BondSearchIndex.FIELD_TICKER | BondSearchIndex.FIELD_SHORT_NAME));
         }
         
-        java.time.LocalDate now = java.time.LocalDate.now();
-        long weeksUntilTarget = java.time.temporal.ChronoUnit.WEEKS.between(now, targetDate);
-        
-        return weeksUntilTarget >= minWeeks && weeksUntilTarget <= maxWeeks;
+        return candidates;
+    }
+
+    private static boolean isIncludeOffer(FilterParams params) {
+        return params.getIncludeOffer() != null ? params.getIncludeOffer() : false;
     }
 
     /**
@@ -181,9 +237,9 @@ public class BondFilteringService {
      * Получает список всех доступных рейтингов
      */
     public List<String> getAllAvailableRatings() {
-        return bondRepository.findDistinctRatingValues()
+        return bondUniverseCache.getUniverse().getRatingValues()
             .stream()
-            .filter(rating -> rating != null && !rating.trim().isEmpty())
+            .filter(rating -> !rating.trim().isEmpty())
             .sorted()
             .collect(Collectors.toList());
     }
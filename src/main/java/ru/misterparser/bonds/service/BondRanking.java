@@ -0,0 +1,187 @@
+package ru.misterparser.bonds.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Порядок облигаций в скринере по вектору выбора колоночного индекса:
+ * целая часть доходности по убыванию, код рейтинга по возрастанию (без рейтинга - в конце),
+ * точная доходность по убыванию, при полном совпадении - исходный порядок.
+ * <p>
+ * Для каждой выбранной облигации порядок упаковывается в один long-ключ:
+ * 11 бит целой части доходности, 16 бит кода рейтинга и старшие 36 бит доходности.
+ * Ключ монотонен относительно точного порядка, поэтому точное сравнение (BigDecimal) выполняется
+ * только для равных ключей.
+ */
+final class BondRanking {
+
+    private static final int FLOOR_BIAS = 1023;
+    private static final int NULL_RATING_KEY = 0xFFFF;
+    private static final int YIELD_BITS = 36;
+
+    private final BondColumnIndex index;
+    private final double[] yields;
+    private final IntFunction<BigDecimal> exactYield;
+    private final int[] selection;
+    private final long[] keys;
+
+    /**
+     * @param selection позиции выбранных облигаций в индексе (первые count элементов)
+     */
+    BondRanking(BondColumnIndex index, double[] yields, IntFunction<BigDecimal> exactYield, int[] selection, int count) {
+        this.index = index;
+        this.yields = yields;
+        this.exactYield = exactYield;
+        this.selection = Arrays.copyOf(selection, count);
+        this.keys = new long[count];
+        for (int k = 0; k < count; k++) {
+            keys[k] = sortKey(this.selection[k]);
+        }
+    }
+
+    /**
+     * Все выбранные позиции в порядке скринера
+     */
+    int[] sorted() {
+        return Arrays.stream(slots(selection.length))
+                .boxed()
+                .sorted(this::compare)
+                .mapToInt(slot -> selection[slot])
+                .toArray();
+    }
+
+    /**
+     * Первые limit позиций в порядке скринера: ограниченная куча размера limit,
+     * на вершине - худшая из отобранных
+     */
+    int[] top(int limit) {
+        int size = Math.min(limit, selection.length);
+        if (size <= 0) {
+            return new int[0];
+        }
+        int[] heap = new int[size];
+        int heapSize = 0;
+        for (int slot = 0; slot < selection.length; slot++) {
+            if (heapSize < size) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (compare(slot, heap[0]) < 0) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+        // Извлечение худшего с вершины заполняет массив с конца
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = selection[heap[0]];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        return result;
+    }
+
+    private long sortKey(int position) {
+        double yield = yields[position];
+        int floor = floor(position);
+        if (floor > FLOOR_BIAS) {
+            return 0L;
+        }
+        if (floor < -FLOOR_BIAS - 1) {
+            return Long.MAX_VALUE;
+        }
+        long floorKey = FLOOR_BIAS - floor;
+        short ratingCode = index.ratingCode(position);
+        long ratingKey = ratingCode == BondColumnIndex.NO_RATING ? NULL_RATING_KEY : ratingCode + 0x8000;
+        // Биты double, упорядоченные как беззнаковые числа по возрастанию, затем инвертированные (убывание)
+        long bits = Double.doubleToLongBits(yield);
+        long ascending = (bits ^ ((bits >> 63) & Long.MAX_VALUE)) ^ Long.MIN_VALUE;
+        long yieldKey = ~ascending >>> (Long.SIZE - YIELD_BITS);
+        return floorKey << 52 | ratingKey << YIELD_BITS | yieldKey;
+    }
+
+    /**
+     * Целая часть доходности (BigDecimal.intValue); точное значение нужно, только если double-доходность целая
+     */
+    private int floor(int position) {
+        double yield = yields[position];
+        if (yield == Math.rint(yield)) {
+            return exactYield.apply(position).intValue();
+        }
+        return (int) yield;
+    }
+
+    private int compare(int slot1, int slot2) {
+        int keyCompare = Long.compare(keys[slot1], keys[slot2]);
+        if (keyCompare != 0) {
+            return keyCompare;
+        }
+        return compareExact(slot1, slot2);
+    }
+
+    private int compareExact(int slot1, int slot2) {
+        int position1 = selection[slot1];
+        int position2 = selection[slot2];
+
+        int floorCompare = Integer.compare(floor(position2), floor(position1));
+        if (floorCompare != 0) {
+            return floorCompare;
+        }
+
+        short rating1 = index.ratingCode(position1);
+        short rating2 = index.ratingCode(position2);
+        if (rating1 != rating2) {
+            if (rating1 == BondColumnIndex.NO_RATING) return 1;
+            if (rating2 == BondColumnIndex.NO_RATING) return -1;
+            return Short.compare(rating1, rating2);
+        }
+
+        int yieldCompare = exactYield.apply(position2).compareTo(exactYield.apply(position1));
+        if (yieldCompare != 0) {
+            return yieldCompare;
+        }
+        return Integer.compare(position1, position2);
+    }
+
+    private void siftUp(int[] heap, int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(slot, heap[parent]) <= 0) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = slot;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        int slot = heap[0];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (compare(slot, heap[child]) >= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+
+    private static int[] slots(int count) {
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = i;
+        }
+        return slots;
+    }
+}
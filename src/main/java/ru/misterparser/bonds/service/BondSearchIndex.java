@@ -0,0 +1,237 @@
+package ru.misterparser.bonds.service;
+
+import ru.misterparser.bonds.model.Bond;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * N-граммный индекс снимка облигаций для текстового поиска по ISIN, тикеру, short_name и brand_name.
+ * Для каждой подстроки длиной 1-3 символа хранится возрастающий список позиций облигаций, в полях которых
+ * она встречается. Запрос длиной до 3 символов - один список, длиннее - пересечение списков его триграмм;
+ * кандидаты проверяются по самим полям.
+ */
+public final class BondSearchIndex {
+
+    public static final int FIELD_ISIN = 1;
+    public static final int FIELD_TICKER = 1 << 1;
+    public static final int FIELD_SHORT_NAME = 1 << 2;
+    public static final int FIELD_BRAND_NAME = 1 << 3;
+    public static final int ALL_FIELDS = FIELD_ISIN | FIELD_TICKER | FIELD_SHORT_NAME | FIELD_BRAND_NAME;
+
+    private static final int MAX_GRAM = 3;
+    private static final int[] EMPTY = new int[0];
+
+    // Ранги релевантности: меньше - выше в выдаче
+    private static final int RANK_ISIN_EXACT = 0;
+    private static final int RANK_TICKER_EXACT = 1;
+    private static final int RANK_TICKER_PREFIX = 2;
+    private static final int RANK_ISIN_PREFIX = 3;
+    private static final int RANK_NAME_PREFIX = 4;
+    private static final int RANK_SUBSTRING = 5;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final int size;
+    private final String[] isinLower;
+    private final String[] tickerLower;
+    private final String[] shortNameLower;
+    private final String[] brandNameLower;
+    private final Map<Long, int[]> postings;
+
+    private BondSearchIndex(int size) {
+        this.size = size;
+        this.isinLower = new String[size];
+        this.tickerLower = new String[size];
+        this.shortNameLower = new String[size];
+        this.brandNameLower = new String[size];
+        this.postings = new HashMap<>();
+    }
+
+    public static BondSearchIndex build(List<Bond> bonds) {
+        BondSearchIndex index = new BondSearchIndex(bonds.size());
+        Map<Long, PositionList> lists = new HashMap<>();
+        for (int i = 0; i < bonds.size(); i++) {
+            Bond bond = bonds.get(i);
+            index.isinLower[i] = lowerCase(bond.getIsin());
+            index.tickerLower[i] = lowerCase(bond.getTicker());
+            index.shortNameLower[i] = lowerCase(bond.getShortName());
+            index.brandNameLower[i] = lowerCase(bond.getBrandName());
+            addGrams(lists, index.isinLower[i], i);
+            addGrams(lists, index.tickerLower[i], i);
+            addGrams(lists, index.shortNameLower[i], i);
+            addGrams(lists, index.brandNameLower[i], i);
+        }
+        lists.forEach((gram, list) -> index.postings.put(gram, list.toArray()));
+        return index;
+    }
+
+    /**
+     * Позиции облигаций, у которых одно из полей fields содержит образец (в нижнем регистре)
+     */
+    public BitSet matching(String lowerCasePattern, int fields) {
+        BitSet result = new BitSet(size);
+        for (int position : candidates(lowerCasePattern)) {
+            if (contains(position, lowerCasePattern, fields)) {
+                result.set(position);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Поиск по всем полям с ранжированием: точный ISIN, точный тикер, начало тикера, начало ISIN,
+     * начало названия, подстрока в любом поле; внутри ранга - порядок снимка
+     *
+     * @return позиции облигаций, не больше limit
+     */
+    public int[] search(String query, int limit) {
+        String pattern = query.trim().toLowerCase();
+        if (pattern.isEmpty() || limit <= 0) {
+            return EMPTY;
+        }
+        int[] candidates = candidates(pattern);
+        List<int[]> ranked = new ArrayList<>();
+        for (int position : candidates) {
+            int rank = rank(position, pattern);
+            if (rank != NO_MATCH) {
+                ranked.add(new int[]{rank, position});
+            }
+        }
+        ranked.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        return ranked.stream()
+                .limit(limit)
+                .mapToInt(entry -> entry[1])
+                .toArray();
+    }
+
+    /**
+     * Позиции, в полях которых есть все n-граммы образца (надмножество совпадений)
+     */
+    private int[] candidates(String pattern) {
+        if (pattern.length() <= MAX_GRAM) {
+            return postings.getOrDefault(gramKey(pattern, 0, pattern.length()), EMPTY);
+        }
+        List<int[]> lists = new ArrayList<>();
+        for (int start = 0; start + MAX_GRAM <= pattern.length(); start++) {
+            int[] list = postings.get(gramKey(pattern, start, start + MAX_GRAM));
+            if (list == null) {
+                return EMPTY;
+            }
+            lists.add(list);
+        }
+        // Пересечение начинается с самого короткого списка
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private int rank(int position, String pattern) {
+        String isin = isinLower[position];
+        String ticker = tickerLower[position];
+        if (isin != null && isin.equals(pattern)) {
+            return RANK_ISIN_EXACT;
+        }
+        if (ticker != null && ticker.equals(pattern)) {
+            return RANK_TICKER_EXACT;
+        }
+        if (ticker != null && ticker.startsWith(pattern)) {
+            return RANK_TICKER_PREFIX;
+        }
+        if (isin != null && isin.startsWith(pattern)) {
+            return RANK_ISIN_PREFIX;
+        }
+        if (startsWith(shortNameLower[position], pattern) || startsWith(brandNameLower[position], pattern)) {
+            return RANK_NAME_PREFIX;
+        }
+        return contains(position, pattern, ALL_FIELDS) ? RANK_SUBSTRING : NO_MATCH;
+    }
+
+    private boolean contains(int position, String pattern, int fields) {
+        return ((fields & FIELD_ISIN) != 0 && contains(isinLower[position], pattern)) ||
+               ((fields & FIELD_TICKER) != 0 && contains(tickerLower[position], pattern)) ||
+               ((fields & FIELD_SHORT_NAME) != 0 && contains(shortNameLower[position], pattern)) ||
+               ((fields & FIELD_BRAND_NAME) != 0 && contains(brandNameLower[position], pattern));
+    }
+
+    private static boolean contains(String value, String pattern) {
+        return value != null && value.contains(pattern);
+    }
+
+    private static boolean startsWith(String value, String pattern) {
+        return value != null && value.startsWith(pattern);
+    }
+
+    private static void addGrams(Map<Long, PositionList> lists, String value, int position) {
+        if (value == null) {
+            return;
+        }
+        for (int start = 0; start < value.length(); start++) {
+            for (int end = start + 1; end <= Math.min(start + MAX_GRAM, value.length()); end++) {
+                lists.computeIfAbsent(gramKey(value, start, end), key -> new PositionList()).add(position);
+            }
+        }
+    }
+
+    /**
+     * Ключ n-граммы: длина и до трех 16-битных символов в одном long
+     */
+    private static long gramKey(String value, int start, int end) {
+        long key = end - start;
+        for (int i = start; i < end; i++) {
+            key = key << 16 | value.charAt(i);
+        }
+        return key;
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static String lowerCase(String value) {
+        return value != null ? value.toLowerCase() : null;
+    }
+
+    /**
+     * Возрастающий список позиций без повторов (позиции добавляются по порядку)
+     */
+    private static final class PositionList {
+        private int[] positions = new int[4];
+        private int count;
+
+        void add(int position) {
+            if (count > 0 && positions[count - 1] == position) {
+                return;
+            }
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, count);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.misterparser.bonds.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.repository.BondRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Снимок облигаций из представления bonds в памяти для всех читающих путей (скринер, подписки, сделки)
+ * вместе с колоночным индексом для фильтра скринера и n-граммным индексом для текстового поиска.
+ * Снимок перечитывается один раз после публикации нового поколения расчета и подменяется целиком;
+ * облигации из снимка общие для всех читателей и не должны изменяться.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BondUniverseCache {
+
+    private final BondRepository bondRepository;
+    private final CalculationService calculationService;
+
+    private volatile BondUniverse universe;
+
+    /**
+     * Неизменяемый снимок облигаций
+     */
+    @Value
+    public static class BondUniverse {
+        List<Bond> bonds;
+        Map<String, Bond> bondsByIsin;
+        List<String> ratingValues;
+        BondColumnIndex columns;
+        BondSearchIndex search;
+        long generation;
+        LocalDateTime loadedAt;
+    }
+
+    /**
+     * Текущий снимок; перечитывается, если опубликовано новое поколение расчета
+     */
+    public BondUniverse getUniverse() {
+        BondUniverse current = universe;
+        if (current == null || current.getGeneration() != calculationService.getCurrentGeneration()) {
+            return refreshIfStale();
+        }
+        return current;
+    }
+
+    public List<Bond> getBonds() {
+        return getUniverse().getBonds();
+    }
+
+    public Optional<Bond> findByIsin(String isin) {
+        return Optional.ofNullable(getUniverse().getBondsByIsin().get(isin));
+    }
+
+    /**
+     * Принудительно перечитывает снимок из БД
+     */
+    public synchronized BondUniverse refresh() {
+        long generation = calculationService.getCurrentGeneration();
+        long start = System.nanoTime();
+
+        List<Bond> bonds = Collections.unmodifiableList(bondRepository.findAllBondsForFiltering());
+        Map<String, Bond> bondsByIsin = Collections.unmodifiableMap(bonds.stream()
+                .collect(Collectors.toMap(Bond::getIsin, Function.identity(), (first, second) -> first, LinkedHashMap::new)));
+        Comparator<Bond> ratingOrder = Comparator
+                .comparing(Bond::getRatingCode, Comparator.nullsLast(Comparator.<Integer>naturalOrder()))
+                .thenComparing(Bond::getRatingValue);
+        List<String> ratingValues = Collections.unmodifiableList(bonds.stream()
+                .filter(bond -> bond.getRatingValue() != null)
+                .sorted(ratingOrder)
+                .map(Bond::getRatingValue)
+                .distinct()
+                .collect(Collectors.toList()));
+
+        BondUniverse loaded = new BondUniverse(bonds, bondsByIsin, ratingValues,
+                BondColumnIndex.build(bonds), BondSearchIndex.build(bonds), generation, LocalDateTime.now());
+        universe = loaded;
+        log.info("Bond universe loaded: {} bonds, generation {}, {} ms",
+                bonds.size(), generation, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return loaded;
+    }
+
+    private synchronized BondUniverse refreshIfStale() {
+        // Пока ждали блокировку, снимок мог перечитать другой поток
+        BondUniverse current = universe;
+        if (current != null && current.getGeneration() == calculationService.getCurrentGeneration()) {
+            return current;
+        }
+        return refresh();
+    }
+
+    /**
+     * Возраст снимка и отставание от текущего поколения расчета
+     */
+    public String getStaleness() {
+        BondUniverse current = universe;
+        if (current == null) {
+            return "Bond universe not loaded";
+        }
+        long currentGeneration = calculationService.getCurrentGeneration();
+        return String.format("Bond universe: %d bonds, generation %d (current %d, %s), loaded at %s (%d s ago)",
+                current.getBonds().size(), current.getGeneration(), currentGeneration,
+                current.getGeneration() == currentGeneration ? "up to date" : "stale",
+                current.getLoadedAt(), Duration.between(current.getLoadedAt(), LocalDateTime.now()).getSeconds());
+    }
+}
@@ -1,5 +1,6 @@
 package ru.misterparser.bonds.service;
 
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
@@ -9,15 +10,28 @@ import ru.misterparser.bonds.config.CalcConfig;
 import ru.misterparser.bonds.model.Bond;
 import ru.misterparser.bonds.repository.BondCalculationDataRepository;
 import ru.misterparser.bonds.repository.BondCalculationRepository;
+import ru.misterparser.bonds.repository.CalcGenerationRepository;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
-import java.lang.reflect.Field;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,50 +40,297 @@ public class CalculationService {
 
     private static final BigDecimal HUNDRED = new BigDecimal("100");
     private static final BigDecimal DAYS_IN_YEAR = new BigDecimal("365");
+    // Допустимое относительное расхождение показателей double- и BigDecimal-расчета
+    private static final double KERNEL_TOLERANCE = 1e-6;
+    // Сверяемые показатели: все сохраняемые в bonds_calc и комиссия.
+    // Суммы сравниваются относительно номинала: доход - малая разность сумм порядка номинала,
+    // а BigDecimal-расчет округляет каждый шаг до calc.precision значащих цифр
+    private static final Map<String, Function<Bond, Number>> KERNEL_AMOUNTS = kernelAmounts();
+    private static final Map<String, Function<Bond, Number>> KERNEL_RATES = kernelRates();
 
     private final CalcConfig calcConfig;
     private final BondCalculationDataRepository bondCalculationDataRepository;
     private final BondCalculationRepository bondCalculationRepository;
+    private final CalcGenerationRepository calcGenerationRepository;
     private final ApplicationContext applicationContext;
+    private final DoubleCalculationKernel doubleCalculationKernel;
 
-    public void calculateAllBonds() {
+    private ForkJoinPool calculationPool;
+
+    // Отметка последнего успешного расчета и дата последнего полного пересчета (инкрементальный режим)
+    private volatile LocalDateTime calculationWatermark;
+    private volatile LocalDate lastFullCalculationDate;
+
+    // Текущее опубликованное поколение bonds_calc (null - еще не прочитано из БД)
+    private volatile Long currentGeneration;
+
+    @PostConstruct
+    public void initCalculationPool() {
+        if (calcConfig.isBulkMode() && calcConfig.getParallelism() > 1) {
+            calculationPool = new ForkJoinPool(calcConfig.getParallelism());
+            log.info("Parallel calculation enabled with parallelism {}", calcConfig.getParallelism());
+        }
+    }
+
+    @PreDestroy
+    public void shutdownCalculationPool() {
+        if (calculationPool != null) {
+            calculationPool.shutdown();
+        }
+    }
+
+    /**
+     * Плановый расчет. В инкрементальном режиме пересчитываются только облигации,
+     * исходные данные которых изменились после предыдущего расчета; раз в сутки
+     * (и при первом запуске) выполняется полный пересчет, так как показатели зависят от текущей даты.
+     */
+    public synchronized void calculateAllBonds() {
+        LocalDate today = LocalDate.now();
+        if (!calcConfig.isIncremental() || calculationWatermark == null || !today.equals(lastFullCalculationDate)) {
+            calculateAllBondsFull();
+            return;
+        }
+
+        log.info("Starting incremental calculation for bonds changed since {}", calculationWatermark);
+
+        try {
+            LocalDateTime watermark = bondCalculationDataRepository.getDatabaseTime();
+            List<Bond> bonds = bondCalculationDataRepository.findChangedSinceForCalculation(
+                    calculationWatermark.minusSeconds(calcConfig.getIncrementalOverlapSeconds()));
+            log.info("Found {} changed bonds from source tables for calculation", bonds.size());
+
+            calculateBonds(bonds, true);
+            calculationWatermark = watermark;
+
+        } catch (Exception e) {
+            log.error("Error during incremental calculation", e);
+        }
+    }
+
+    /**
+     * Полный пересчет всех облигаций независимо от отметки последнего расчета
+     */
+    public synchronized void calculateAllBondsFull() {
         log.info("Starting calculation for all bonds");
 
         try {
+            LocalDate today = LocalDate.now();
+            LocalDateTime watermark = bondCalculationDataRepository.getDatabaseTime();
             List<Bond> bonds = bondCalculationDataRepository.findAllForCalculation();
             log.info("Found {} bonds from source tables for calculation", bonds.size());
 
-            int processed = 0;
-            int calculated = 0;
-            int skipped = 0;
-
-            for (Bond bond : bonds) {
-                processed++;
-                try {
-                    if (canCalculate(bond)) {
-                        applicationContext.getBean(CalculationService.class).processBondCalculation(bond);
-                        calculated++;
-                        log.debug("Calculated bond: {}", bond.getIsin());
-                    } else {
-                        skipped++;
-                        log.debug("Skipped bond: {} (missing data)", bond.getIsin());
-                    }
-                } catch (Exception e) {
+            calculateBonds(bonds, false);
+            calculationWatermark = watermark;
+            lastFullCalculationDate = today;
+
+        } catch (Exception e) {
+            log.error("Error during calculation", e);
+        }
+    }
+
+    /**
+     * Пересчет только указанных облигаций (например, с изменившимися ценами из потока рыночных данных)
+     * в новое поколение на основе текущего. Если сегодня полного пересчета еще не было - плановый расчет.
+     */
+    public synchronized void calculateChangedBonds(Collection<String> isins) {
+        if (calculationWatermark == null || !LocalDate.now().equals(lastFullCalculationDate)) {
+            calculateAllBonds();
+            return;
+        }
+
+        try {
+            List<Bond> bonds = bondCalculationDataRepository.findByIsinsForCalculation(isins);
+            log.debug("Recalculating {} bonds with changed source data", bonds.size());
+            calculateBonds(bonds, true);
+        } catch (Exception e) {
+            log.error("Error during calculation of {} changed bonds", isins.size(), e);
+        }
+    }
+
+    /**
+     * Номер текущего опубликованного поколения bonds_calc. Дешевая проверка для кэшей в памяти:
+     * номер меняется только при публикации нового прогона расчета.
+     */
+    public long getCurrentGeneration() {
+        Long generation = currentGeneration;
+        if (generation == null) {
+            generation = calcGenerationRepository.findCurrentGeneration();
+            currentGeneration = generation;
+        }
+        return generation;
+    }
+
+    /**
+     * Расчет в новое поколение bonds_calc с последующей публикацией. Полный прогон начинает новую цепочку
+     * поколений, инкрементальный продолжает цепочку текущего и пишет только пересчитанные облигации -
+     * остальные представление bonds берет из предыдущих поколений цепочки.
+     */
+    private void calculateBonds(List<Bond> bonds, boolean incremental) {
+        if (incremental && bonds.isEmpty()) {
+            log.info("No changed bonds, generation {} stays current", getCurrentGeneration());
+            return;
+        }
+
+        Long previousGeneration = incremental ? getCurrentGeneration() : null;
+        long generation = calcGenerationRepository.createGeneration(previousGeneration);
+        log.info("Writing calculation results into generation {} (previous: {})", generation, previousGeneration);
+
+        if (calcConfig.isBulkMode()) {
+            calculateAllBondsBulk(bonds, generation);
+        } else {
+            calculateAllBondsSequential(bonds, generation);
+        }
+
+        onGenerationPublished(generation);
+    }
+
+    private void calculateAllBondsSequential(List<Bond> bonds, long generation) {
+        CalculationService self = applicationContext.getBean(CalculationService.class);
+
+        int processed = 0;
+        int calculated = 0;
+        int skipped = 0;
+
+        for (Bond bond : bonds) {
+            processed++;
+            try {
+                if (canCalculate(bond)) {
+                    self.processBondCalculation(bond, generation);
+                    calculated++;
+                    log.debug("Calculated bond: {}", bond.getIsin());
+                } else {
                     skipped++;
-                    log.debug("Error calculating bond {}: {}", bond.getIsin(), e.getMessage());
+                    log.debug("Skipped bond: {} (missing data)", bond.getIsin());
                 }
+            } catch (Exception e) {
+                skipped++;
+                log.debug("Error calculating bond {}: {}", bond.getIsin(), e.getMessage());
             }
+        }
+
+        self.publishGeneration(generation);
+
+        log.info("Calculation completed - Processed: {}, Calculated: {}, Skipped: {}", 
+                processed, calculated, skipped);
+    }
 
-            log.info("Calculation completed - Processed: {}, Calculated: {}, Skipped: {}", 
-                    processed, calculated, skipped);
+    /**
+     * Массовый расчет: все показатели считаются в памяти (параллельно при calc.parallelism > 1),
+     * затем сохраняются batch-запросами и публикуются в одной транзакции
+     */
+    private void calculateAllBondsBulk(List<Bond> bonds, long generation) {
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+
+        long calcStart = System.nanoTime();
+        List<Bond> calculatedBonds = calculationPool != null
+                ? calculateInPool(bonds, processed, skipped)
+                : bonds.stream()
+                        .map(bond -> calculateInMemory(bond, processed, skipped))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+        long calcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - calcStart);
+        log.info("Calculated {} bonds in memory in {} ms (parallelism: {})",
+                calculatedBonds.size(), calcMillis, calculationPool != null ? calculationPool.getParallelism() : 1);
+
+        applicationContext.getBean(CalculationService.class)
+                .saveCalculationResults(calculatedBonds, generation);
+
+        log.info("Calculation completed - Processed: {}, Calculated: {}, Skipped: {}",
+                processed.get(), calculatedBonds.size(), skipped.get());
+    }
 
+    private List<Bond> calculateInPool(List<Bond> bonds, AtomicInteger processed, AtomicInteger skipped) {
+        try {
+            // Порядок результатов сохраняется, чтобы запись в БД шла в порядке ISIN
+            return calculationPool.submit(() -> bonds.parallelStream()
+                    .map(bond -> calculateInMemory(bond, processed, skipped))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Parallel calculation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Parallel calculation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Рассчитывает копию облигации без сохранения; возвращает null, если облигация пропущена
+     */
+    private Bond calculateInMemory(Bond bond, AtomicInteger processed, AtomicInteger skipped) {
+        processed.incrementAndGet();
+        try {
+            if (canCalculate(bond)) {
+                Bond bondCopy = bond.copySourceData();
+                calculateBond(bondCopy);
+                return bondCopy;
+            }
+            skipped.incrementAndGet();
+            log.debug("Skipped bond: {} (missing data)", bond.getIsin());
         } catch (Exception e) {
-            log.error("Error during calculation", e);
+            skipped.incrementAndGet();
+            log.debug("Error calculating bond {}: {}", bond.getIsin(), e.getMessage());
         }
+        return null;
     }
 
+    /**
+     * Сохраняет рассчитанные показатели в поколение bonds_calc порциями по calc.chunk-size
+     * и публикует его в рамках одной транзакции
+     */
     @Transactional
-    public void calculateBond(String isin) {
+    public void saveCalculationResults(List<Bond> calculatedBonds, long generation) {
+        int total = calculatedBonds.size();
+        int chunkSize = Math.max(1, calcConfig.getChunkSize());
+
+        long saveStart = System.nanoTime();
+        for (int from = 0; from < total; from += chunkSize) {
+            int to = Math.min(from + chunkSize, total);
+            long chunkStart = System.nanoTime();
+            bondCalculationRepository.saveOrUpdateCalculationDataBatch(calculatedBonds.subList(from, to), generation);
+            log.info("Saved calculation chunk {}-{} of {} in {} ms",
+                    from + 1, to, total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - chunkStart));
+        }
+        log.info("Saved {} calculation results in {} ms",
+                total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - saveStart));
+
+        publishGeneration(generation);
+    }
+
+    /**
+     * Делает поколение текущим для представления bonds
+     */
+    @Transactional
+    public void publishGeneration(long generation) {
+        if (!calcGenerationRepository.publish(generation)) {
+            log.warn("Generation {} was not published - a newer generation is already current", generation);
+        }
+    }
+
+    /**
+     * Обновляет номер текущего поколения в памяти и удаляет строки, не видные ни в одном
+     * из последних calc.generations-to-keep поколений
+     */
+    private void onGenerationPublished(long generation) {
+        currentGeneration = calcGenerationRepository.findCurrentGeneration();
+        log.info("Published calculation generation {} (current: {})", generation, currentGeneration);
+
+        try {
+            calcGenerationRepository.findOldestKeptGeneration(calcConfig.getGenerationsToKeep())
+                    .ifPresent(oldest -> {
+                        int rows = bondCalculationRepository.deleteSupersededRows(oldest,
+                                calcGenerationRepository.findBaseGeneration(oldest));
+                        calcGenerationRepository.deleteEmptyGenerationsBefore(oldest);
+                        log.info("Deleted {} superseded calculation rows before generation {}", rows, oldest);
+                    });
+        } catch (Exception e) {
+            log.warn("Error deleting old calculation generations: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void calculateBond(String isin) {
         log.info("Starting calculation for bond: {}", isin);
 
         try {
@@ -77,7 +338,9 @@ public class CalculationService {
             if (optionalBond.isPresent()) {
                 Bond bond = optionalBond.get();
                 if (canCalculate(bond)) {
-                    applicationContext.getBean(CalculationService.class).processBondCalculation(bond);
+                    // Облигация записывается в новое поколение поверх текущего, чтобы кэши снимка
+                    // и результатов скринера увидели изменение по смене номера поколения
+                    calculateChangedBonds(List.of(isin));
                     log.info("Calculation completed for bond: {}", isin);
                 } else {
                     log.warn("Cannot calculate bond {} - missing required data", isin);
@@ -91,10 +354,10 @@ public class CalculationService {
     }
 
     @Transactional
-    public void processBondCalculation(Bond bond) {
-        Bond bondCopy = createBondCopy(bond);
+    public void processBondCalculation(Bond bond, long generation) {
+        Bond bondCopy = bond.copySourceData();
         calculateBond(bondCopy);
-        bondCalculationRepository.saveOrUpdateCalculationData(bondCopy);
+        bondCalculationRepository.saveOrUpdateCalculationData(bondCopy, generation);
     }
 
 
@@ -110,6 +373,14 @@ public class CalculationService {
     }
 
     private void calculateBond(Bond bond) {
+        if (calcConfig.getKernel() == CalcConfig.Kernel.DOUBLE) {
+            doubleCalculationKernel.calculate(bond, LocalDate.now(), null);
+            return;
+        }
+        calculateBondBigDecimal(bond);
+    }
+
+    private void calculateBondBigDecimal(Bond bond) {
         MathContext mathContext = new MathContext(calcConfig.getPrecision(), RoundingMode.HALF_UP);
         LocalDate now = LocalDate.now();
 
@@ -129,6 +400,7 @@ public class CalculationService {
 
         // 5. Купоны до погашения
         long daysToMaturity = ChronoUnit.DAYS.between(now, bond.getMaturityDate());
+        bond.setDaysToMaturity((int) daysToMaturity);
         BigDecimal couponRedemption = new BigDecimal(daysToMaturity - 1)
                 .multiply(couponDaily, mathContext)
                 .add(nkd);
@@ -168,8 +440,17 @@ public class CalculationService {
         }
 
         // Создаем копию облигации для пересчёта
-        Bond calculatedBond = createBondCopy(bond);
-        
+        Bond calculatedBond = bond.copySourceData();
+
+        if (calcConfig.getKernel() == CalcConfig.Kernel.DOUBLE) {
+            doubleCalculationKernel.calculate(calculatedBond, LocalDate.now(), customFeePercent);
+            return calculatedBond;
+        }
+        calculateBondWithCustomFeeBigDecimal(calculatedBond, customFeePercent);
+        return calculatedBond;
+    }
+
+    private void calculateBondWithCustomFeeBigDecimal(Bond calculatedBond, BigDecimal customFeePercent) {
         MathContext mathContext = new MathContext(calcConfig.getPrecision(), RoundingMode.HALF_UP);
         LocalDate now = LocalDate.now();
 
@@ -196,6 +477,7 @@ public class CalculationService {
 
         // 5. Купоны до погашения (не зависят от комиссии)
         long daysToMaturity = ChronoUnit.DAYS.between(now, calculatedBond.getMaturityDate());
+        calculatedBond.setDaysToMaturity((int) daysToMaturity);
         BigDecimal couponRedemption = new BigDecimal(daysToMaturity - 1)
                 .multiply(couponDaily, mathContext)
                 .add(nkd);
@@ -220,8 +502,125 @@ public class CalculationService {
 
         // 9. Расчёт по дате оферты с кастомной комиссией (двойная комиссия)
         calculateOfferMetricsWithCustomFee(calculatedBond, mathContext, now, costs, couponDaily, nkd, taxRate, customFeePercent);
+    }
 
-        return calculatedBond;
+    /**
+     * Сверяет double-расчет с эталонным BigDecimal-расчетом на всех облигациях из исходных таблиц
+     * по всем сохраняемым показателям
+     */
+    public KernelComparison compareKernels(BigDecimal customFeePercent) {
+        List<Bond> bonds = bondCalculationDataRepository.findAllForCalculation();
+        LocalDate now = LocalDate.now();
+
+        KernelComparison comparison = new KernelComparison();
+        comparison.setTolerance(KERNEL_TOLERANCE);
+
+        for (Bond bond : bonds) {
+            if (!canCalculate(bond)) {
+                continue;
+            }
+
+            Bond reference = bond.copySourceData();
+            if (customFeePercent != null) {
+                calculateBondWithCustomFeeBigDecimal(reference, customFeePercent);
+            } else {
+                calculateBondBigDecimal(reference);
+            }
+
+            Bond fast = bond.copySourceData();
+            doubleCalculationKernel.calculate(fast, now, customFeePercent);
+
+            comparison.setCompared(comparison.getCompared() + 1);
+            boolean amountsMatch = compareOutputs(comparison, bond.getIsin(), KERNEL_AMOUNTS, reference, fast,
+                    bond.getFaceValue().doubleValue());
+            boolean ratesMatch = compareOutputs(comparison, bond.getIsin(), KERNEL_RATES, reference, fast, 1.0);
+            if (!amountsMatch || !ratesMatch) {
+                comparison.setMismatched(comparison.getMismatched() + 1);
+            }
+        }
+
+        log.info("Kernel comparison completed - Compared: {}, Mismatched: {}, Max diff: {} ({} {})",
+                comparison.getCompared(), comparison.getMismatched(),
+                comparison.getMaxDiff(), comparison.getMaxDiffIsin(), comparison.getMaxDiffField());
+        return comparison;
+    }
+
+    /**
+     * Сверяет показатели облигации, обновляя максимальное расхождение
+     *
+     * @return true, если все показатели совпали с точностью KERNEL_TOLERANCE
+     */
+    private static boolean compareOutputs(KernelComparison comparison, String isin,
+                                          Map<String, Function<Bond, Number>> outputs,
+                                          Bond reference, Bond fast, double scale) {
+        boolean match = true;
+        for (Map.Entry<String, Function<Bond, Number>> output : outputs.entrySet()) {
+            Number expected = output.getValue().apply(reference);
+            Number actual = output.getValue().apply(fast);
+            double diff = relativeDiff(expected, actual, scale);
+            if (diff > KERNEL_TOLERANCE) {
+                match = false;
+                log.debug("Kernel mismatch for bond {} in {}: BigDecimal={}, double={}",
+                        isin, output.getKey(), expected, actual);
+            }
+            if (diff > comparison.getMaxDiff()) {
+                comparison.setMaxDiff(diff);
+                comparison.setMaxDiffIsin(isin);
+                comparison.setMaxDiffField(output.getKey());
+            }
+        }
+        return match;
+    }
+
+    private static Map<String, Function<Bond, Number>> kernelAmounts() {
+        Map<String, Function<Bond, Number>> amounts = new LinkedHashMap<>();
+        amounts.put("coupon_daily", Bond::getCouponDaily);
+        amounts.put("nkd", Bond::getNkd);
+        amounts.put("fee", Bond::getFee);
+        amounts.put("costs", Bond::getCosts);
+        amounts.put("coupon_redemption", Bond::getCouponRedemption);
+        amounts.put("profit", Bond::getProfit);
+        amounts.put("profit_net", Bond::getProfitNet);
+        amounts.put("coupon_offer", Bond::getCouponOffer);
+        amounts.put("profit_offer", Bond::getProfitOffer);
+        amounts.put("profit_net_offer", Bond::getProfitNetOffer);
+        return amounts;
+    }
+
+    private static Map<String, Function<Bond, Number>> kernelRates() {
+        Map<String, Function<Bond, Number>> rates = new LinkedHashMap<>();
+        rates.put("annual_yield", Bond::getAnnualYield);
+        rates.put("annual_yield_offer", Bond::getAnnualYieldOffer);
+        rates.put("days_to_maturity", Bond::getDaysToMaturity);
+        rates.put("days_to_offer", Bond::getDaysToOffer);
+        return rates;
+    }
+
+    /**
+     * Расхождение относительно большего из модуля эталонного значения и scale
+     */
+    private static double relativeDiff(Number expected, Number actual, double scale) {
+        if (expected == null && actual == null) {
+            return 0;
+        }
+        if (expected == null || actual == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double reference = expected.doubleValue();
+        return Math.abs(reference - actual.doubleValue()) / Math.max(Math.abs(reference), scale);
+    }
+
+    /**
+     * Результат сверки double- и BigDecimal-расчета
+     */
+    @Data
+    public static class KernelComparison {
+        private int compared;
+        private int mismatched;
+        private double maxDiff;
+        private String maxDiffIsin;
+        private String maxDiffField;
+        private double tolerance;
     }
 
     private void calculateOfferMetricsWithCustomFee(Bond bond, MathContext mathContext, LocalDate now, 
@@ -233,11 +632,13 @@ public class CalculationService {
             bond.setProfitOffer(null);
             bond.setProfitNetOffer(null);
             bond.setAnnualYieldOffer(null);
+            bond.setDaysToOffer(null);
             return;
         }
 
         try {
             long daysToOffer = ChronoUnit.DAYS.between(now, bond.getOfferDate());
+            bond.setDaysToOffer((int) daysToOffer);
             
             // 1. Купоны до оферты
             BigDecimal couponOffer = new BigDecimal(daysToOffer - 1)
@@ -280,50 +681,10 @@ public class CalculationService {
             bond.setProfitOffer(null);
             bond.setProfitNetOffer(null);
             bond.setAnnualYieldOffer(null);
+            bond.setDaysToOffer(null);
         }
     }
 
-    private Bond createBondCopy(Bond original) {
-        try {
-            Bond copy = new Bond();
-            
-            // Получаем все поля класса Bond включая унаследованные
-            Field[] fields = Bond.class.getDeclaredFields();
-            
-            for (Field field : fields) {
-                field.setAccessible(true);
-                Object value = field.get(original);
-                
-                // Пропускаем расчетные поля - они будут заполнены заново
-                String fieldName = field.getName();
-                if (isCalculatedField(fieldName)) {
-                    continue;
-                }
-                
-                field.set(copy, value);
-            }
-            
-            return copy;
-        } catch (Exception e) {
-            log.error("Error creating bond copy for ISIN: {}", original.getIsin(), e);
-            throw new RuntimeException("Failed to create bond copy", e);
-        }
-    }
-    
-    private boolean isCalculatedField(String fieldName) {
-        return fieldName.equals("couponDaily") ||
-               fieldName.equals("nkd") ||
-               fieldName.equals("costs") ||
-               fieldName.equals("couponRedemption") ||
-               fieldName.equals("profit") ||
-               fieldName.equals("profitNet") ||
-               fieldName.equals("annualYield") ||
-               fieldName.equals("couponOffer") ||
-               fieldName.equals("profitOffer") ||
-               fieldName.equals("profitNetOffer") ||
-               fieldName.equals("annualYieldOffer");
-    }
-
     private void calculateOfferMetrics(Bond bond, MathContext mathContext, LocalDate now, 
                                       BigDecimal costs, BigDecimal couponDaily, BigDecimal nkd, BigDecimal taxRate) {
         // Проверяем наличие даты оферты
@@ -333,11 +694,13 @@ public class CalculationService {
             bond.setProfitOffer(null);
             bond.setProfitNetOffer(null);
             bond.setAnnualYieldOffer(null);
+            bond.setDaysToOffer(null);
             return;
         }
 
         try {
             long daysToOffer = ChronoUnit.DAYS.between(now, bond.getOfferDate());
+            bond.setDaysToOffer((int) daysToOffer);
             
             // 1. Купоны до оферты
             BigDecimal couponOffer = new BigDecimal(daysToOffer - 1)
@@ -372,6 +735,7 @@ public class CalculationService {
             bond.setProfitOffer(null);
             bond.setProfitNetOffer(null);
             bond.setAnnualYieldOffer(null);
+            bond.setDaysToOffer(null);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package ru.misterparser.bonds.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.model.Bond;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Пересчет показателей с кастомной комиссией по сохраненным в bonds_calc коэффициентам.
+ * Комиссия линейно увеличивает затраты: costs(f) = costs × (1 + f), profitNet(f) = profitNet - (1 - ndfl) × costs × f,
+ * поэтому доходность с комиссией получается за O(1) из затрат и чистой прибыли без комиссии
+ * и числа дней до погашения/оферты. Для оферты комиссия двойная.
+ */
+@Component
+@RequiredArgsConstructor
+public class CustomFeeCalculator {
+
+    private static final double DAYS_IN_YEAR = 365.0;
+
+    private final CalcConfig calcConfig;
+    private final CalculationService calculationService;
+
+    /**
+     * Есть ли у облигации сохраненные коэффициенты (строки bonds_calc, рассчитанные до их появления, - нет)
+     */
+    public boolean isApplicable(Bond bond) {
+        return bond.getCosts() != null &&
+               bond.getProfit() != null &&
+               bond.getProfitNet() != null &&
+               bond.getDaysToMaturity() != null &&
+               bond.getDaysToMaturity() > 0 &&
+               bond.getCosts().signum() > 0;
+    }
+
+    /**
+     * Эффективная доходность (с учетом оферты) с кастомной комиссией; NaN, если доходность не определена
+     */
+    public double effectiveYield(Bond bond, BigDecimal customFeePercent, boolean includeOffer) {
+        double feeRate = customFeePercent.doubleValue() / 100.0;
+        double costs = bond.getCosts().doubleValue();
+        if (includeOffer && hasOffer(bond)) {
+            return annualYield(bond.getProfitNetOffer().doubleValue(), costs, feeRate * 2, bond.getDaysToOffer());
+        }
+        return annualYield(bond.getProfitNet().doubleValue(), costs, feeRate, bond.getDaysToMaturity());
+    }
+
+    /**
+     * Копия облигации с показателями, пересчитанными на кастомную комиссию.
+     * Результат совпадает с CalculationService.calculateBondWithCustomFee, включая двойную комиссию
+     * в fee и costs при наличии оферты.
+     */
+    public Bond applyCustomFee(Bond bond, BigDecimal customFeePercent) {
+        if (!isApplicable(bond)) {
+            return calculationService.calculateBondWithCustomFee(bond, customFeePercent);
+        }
+
+        MathContext mathContext = new MathContext(calcConfig.getPrecision(), RoundingMode.HALF_UP);
+        double feeRate = customFeePercent.doubleValue() / 100.0;
+        double taxFactor = taxFactor();
+        double preFeeCosts = bond.getCosts().doubleValue();
+
+        Bond calculatedBond = bond.copySourceData();
+        calculatedBond.setCouponDaily(bond.getCouponDaily());
+        calculatedBond.setNkd(bond.getNkd());
+        calculatedBond.setCouponRedemption(bond.getCouponRedemption());
+        calculatedBond.setDaysToMaturity(bond.getDaysToMaturity());
+
+        double fee = preFeeCosts * feeRate;
+        calculatedBond.setFee(toDecimal(fee, mathContext));
+        calculatedBond.setCosts(toDecimal(preFeeCosts + fee, mathContext));
+        calculatedBond.setProfit(toDecimal(bond.getProfit().doubleValue() - fee, mathContext));
+        calculatedBond.setProfitNet(toDecimal(bond.getProfitNet().doubleValue() - taxFactor * fee, mathContext));
+        calculatedBond.setAnnualYield(toDecimal(
+                annualYield(bond.getProfitNet().doubleValue(), preFeeCosts, feeRate, bond.getDaysToMaturity()), mathContext));
+
+        if (hasOffer(bond)) {
+            double doubleFee = preFeeCosts * feeRate * 2;
+            calculatedBond.setDaysToOffer(bond.getDaysToOffer());
+            calculatedBond.setFee(toDecimal(doubleFee, mathContext));
+            calculatedBond.setCosts(toDecimal(preFeeCosts + doubleFee, mathContext));
+            calculatedBond.setCouponOffer(bond.getCouponOffer());
+            calculatedBond.setProfitOffer(toDecimal(bond.getProfitOffer().doubleValue() - doubleFee, mathContext));
+            calculatedBond.setProfitNetOffer(toDecimal(bond.getProfitNetOffer().doubleValue() - taxFactor * doubleFee, mathContext));
+            calculatedBond.setAnnualYieldOffer(toDecimal(
+                    annualYield(bond.getProfitNetOffer().doubleValue(), preFeeCosts, feeRate * 2, bond.getDaysToOffer()), mathContext));
+        }
+
+        return calculatedBond;
+    }
+
+    private boolean hasOffer(Bond bond) {
+        return bond.getOfferDate() != null &&
+               bond.getDaysToOffer() != null &&
+               bond.getDaysToOffer() > 0 &&
+               bond.getProfitNetOffer() != null &&
+               bond.getProfitOffer() != null;
+    }
+
+    private double annualYield(double profitNetWithoutFee, double preFeeCosts, double feeRate, int days) {
+        double profitNet = profitNetWithoutFee - taxFactor() * preFeeCosts * feeRate;
+        return profitNet / (preFeeCosts * (1 + feeRate)) * DAYS_IN_YEAR / days * 100.0;
+    }
+
+    private double taxFactor() {
+        return 1.0 - calcConfig.getNdfl().doubleValue() / 100.0;
+    }
+
+    private BigDecimal toDecimal(double value, MathContext mathContext) {
+        return BigDecimal.valueOf(value).round(mathContext);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.misterparser.bonds.service;
+
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.model.Bond;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+
+/**
+ * Расчет показателей облигации на примитивах double.
+ * Повторяет формулы BigDecimal-расчета из CalculationService, но промежуточные
+ * значения не создают объектов: BigDecimal создаются только для итоговых полей.
+ */
+@Component
+public class DoubleCalculationKernel {
+
+    private static final double DAYS_IN_YEAR = 365.0;
+
+    private final CalcConfig calcConfig;
+    private final MathContext mathContext;
+
+    public DoubleCalculationKernel(CalcConfig calcConfig) {
+        this.calcConfig = calcConfig;
+        this.mathContext = new MathContext(calcConfig.getPrecision(), RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Рассчитывает показатели облигации.
+     * Если customFeePercent задан - с кастомной комиссией (двойная комиссия для оферты),
+     * иначе - как основной расчет без комиссии.
+     */
+    public void calculate(Bond bond, LocalDate now, BigDecimal customFeePercent) {
+        double taxFactor = 1.0 - calcConfig.getNdfl().doubleValue() / 100.0;
+        double feeRate = customFeePercent != null ? customFeePercent.doubleValue() / 100.0 : 0.0;
+        long nowDay = now.toEpochDay();
+
+        // 1. Дневной купон и НКД
+        double couponDaily = bond.getCouponValue().doubleValue() / bond.getCouponLength();
+        double nkd = couponDaily * (bond.getCouponDaysPassed() + 1);
+        bond.setCouponDaily(toDecimal(couponDaily));
+        bond.setNkd(toDecimal(nkd));
+
+        // 2. Затраты (с комиссией, если она задана)
+        double preFeeCosts = bond.getPriceAsk().doubleValue() + nkd;
+        double fee = preFeeCosts * feeRate;
+        double costs = preFeeCosts + fee;
+        if (customFeePercent != null) {
+            bond.setFee(toDecimal(fee));
+        }
+        bond.setCosts(toDecimal(costs));
+
+        // 3. Показатели до погашения
+        double faceValue = bond.getFaceValue().doubleValue();
+        long daysToMaturity = bond.getMaturityDate().toEpochDay() - nowDay;
+        bond.setDaysToMaturity((int) daysToMaturity);
+        double couponRedemption = (daysToMaturity - 1) * couponDaily + nkd;
+        double profit = faceValue + couponRedemption - costs;
+        double profitNet = profit * taxFactor;
+        bond.setCouponRedemption(toDecimal(couponRedemption));
+        bond.setProfit(toDecimal(profit));
+        bond.setProfitNet(toDecimal(profitNet));
+        bond.setAnnualYield(toDecimal(annualYield(profitNet, costs, daysToMaturity)));
+
+        // 4. Показатели до оферты
+        if (bond.getOfferDate() == null || !bond.getOfferDate().isAfter(now)) {
+            bond.setCouponOffer(null);
+            bond.setProfitOffer(null);
+            bond.setProfitNetOffer(null);
+            bond.setAnnualYieldOffer(null);
+            bond.setDaysToOffer(null);
+            return;
+        }
+
+        long daysToOffer = bond.getOfferDate().toEpochDay() - nowDay;
+        bond.setDaysToOffer((int) daysToOffer);
+        double offerCosts = costs;
+        if (customFeePercent != null) {
+            double doubleFee = preFeeCosts * feeRate * 2;
+            offerCosts = preFeeCosts + doubleFee;
+            bond.setFee(toDecimal(doubleFee));
+            bond.setCosts(toDecimal(offerCosts));
+        }
+        double couponOffer = (daysToOffer - 1) * couponDaily + nkd;
+        double profitOffer = faceValue + couponOffer - offerCosts;
+        double profitNetOffer = profitOffer * taxFactor;
+        bond.setCouponOffer(toDecimal(couponOffer));
+        bond.setProfitOffer(toDecimal(profitOffer));
+        bond.setProfitNetOffer(toDecimal(profitNetOffer));
+        bond.setAnnualYieldOffer(toDecimal(annualYield(profitNetOffer, offerCosts, daysToOffer)));
+    }
+
+    static double annualYield(double profitNet, double costs, long days) {
+        return profitNet / costs * DAYS_IN_YEAR / days * 100.0;
+    }
+
+    private BigDecimal toDecimal(double value) {
+        return BigDecimal.valueOf(value).round(mathContext);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.misterparser.bonds.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.TBankConfig;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Локальный тестовый сервер потока рыночных данных (профиль fake-stream).
+ * Отвечает на MarketDataServerSideStream так же, как REST-стриминг T-Bank: по одному JSON-сообщению на строку.
+ * Без fake-replay-file каждые fake-tick-interval-ms отправляет стакан случайной подписанной облигации
+ * (цена 80-120% номинала), иначе по кругу воспроизводит записанные сообщения из файла.
+ */
+@Component
+@Profile("fake-stream")
+@RequiredArgsConstructor
+@Slf4j
+public class FakeMarketDataStreamServer {
+
+    private static final String STREAM_PATH =
+            "/tinkoff.public.invest.api.contract.v1.MarketDataStreamService/MarketDataServerSideStream";
+
+    private final TBankConfig tBankConfig;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        TBankConfig.StreamConfig config = tBankConfig.getStream();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-tbank-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", config.getFakeServerPort()), 0);
+        server.createContext(STREAM_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        log.info("Fake T-Bank market data stream server started on port {}", config.getFakeServerPort());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            List<String> figis = new ArrayList<>();
+            JsonNode instruments = objectMapper.readTree(exchange.getRequestBody())
+                    .path("subscribeOrderBookRequest").path("instruments");
+            instruments.forEach(instrument -> figis.add(instrument.path("figi").asText()));
+            log.info("Fake T-Bank stream: subscription to {} instruments", figis.size());
+
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            String replayFile = tBankConfig.getStream().getFakeReplayFile();
+            if (replayFile != null && !replayFile.isEmpty()) {
+                replay(body, Files.readAllLines(Path.of(replayFile), StandardCharsets.UTF_8));
+            } else if (!figis.isEmpty()) {
+                generate(body, figis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Клиент закрыл поток
+            log.debug("Fake T-Bank stream closed: {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void generate(OutputStream body, List<String> figis) throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!Thread.currentThread().isInterrupted()) {
+            // Цена в процентах номинала, спред до 1%
+            BigDecimal bid = BigDecimal.valueOf(80 + random.nextDouble() * 40).setScale(2, RoundingMode.HALF_UP);
+            BigDecimal ask = bid.add(BigDecimal.valueOf(random.nextDouble())).setScale(2, RoundingMode.HALF_UP);
+            Map<String, Object> message = Map.of("result", Map.of("orderbook", Map.of(
+                    "figi", figis.get(random.nextInt(figis.size())),
+                    "depth", 1,
+                    "bids", List.of(Map.of("price", quotation(bid), "quantity", random.nextInt(1, 100))),
+                    "asks", List.of(Map.of("price", quotation(ask), "quantity", random.nextInt(1, 100))))));
+            writeLine(body, objectMapper.writeValueAsString(message));
+            sleepTick();
+        }
+    }
+
+    private void replay(OutputStream body, List<String> lines) throws IOException, InterruptedException {
+        if (lines.stream().allMatch(String::isBlank)) {
+            return;
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            for (String line : lines) {
+                if (!line.isBlank()) {
+                    writeLine(body, line);
+                    sleepTick();
+                }
+            }
+        }
+    }
+
+    private void writeLine(OutputStream body, String line) throws IOException {
+        body.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+
+    private void sleepTick() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(Math.max(1, tBankConfig.getStream().getFakeTickIntervalMs()));
+    }
+
+    private static Map<String, Object> quotation(BigDecimal value) {
+        long units = value.longValue();
+        int nano = value.subtract(BigDecimal.valueOf(units)).movePointRight(9).intValue();
+        return Map.of("units", String.valueOf(units), "nano", nano);
+    }
+}
@@ -4,7 +4,7 @@ import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
-import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvValidationException;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
@@ -26,6 +26,11 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
@@ -49,21 +54,22 @@ public class MoexService {
         log.info("Starting MOEX bonds parsing from URL");
         
         try {
-            List<String[]> csvData = loadCsvData();
-            if (csvData.isEmpty()) {
-                log.error("No data loaded from CSV");
-                return;
-            }
-
-            processCsvData(csvData);
+            loadAndProcessCsvData();
             log.info("MOEX bonds parsing completed successfully");
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("MOEX parsing interrupted");
         } catch (Exception e) {
             log.error("Error during MOEX parsing", e);
         }
     }
 
-    private List<String[]> loadCsvData() throws IOException, CsvException {
+    /**
+     * Читает CSV потоком: строки разбираются по мере чтения из соединения и передаются пачками
+     * в BatchWriter, который пишет их в БД в отдельном потоке, пока продолжается разбор
+     */
+    private void loadAndProcessCsvData() throws IOException, CsvValidationException, InterruptedException {
         log.info("Loading CSV data from URL: {}", moexConfig.getCsvUrl());
         
         URL url = new URL(moexConfig.getCsvUrl());
@@ -73,91 +79,184 @@ public class MoexService {
         connection.setReadTimeout(30000);
 
         try (InputStream inputStream = connection.getInputStream();
-             InputStreamReader reader = new InputStreamReader(inputStream, CP1251)) {
+             Reader reader = new BufferedReader(new InputStreamReader(inputStream, CP1251))) {
             
             CSVParser parser = new CSVParserBuilder().withSeparator(';').build();
             CSVReader csvReader = new CSVReaderBuilder(reader).withCSVParser(parser).build();
             
-            return csvReader.readAll();
+            processCsvData(csvReader);
         }
     }
 
-    private void processCsvData(List<String[]> csvData) {
-        String[] headers = findHeaders(csvData);
-        if (headers == null) {
-            log.error("Headers not found in CSV data");
-            return;
-        }
-
-        Map<String, Integer> columnIndexes = mapColumns(headers);
-        log.debug("Found columns: {}", columnIndexes);
+    private void processCsvData(CSVReader csvReader) throws IOException, CsvValidationException, InterruptedException {
+        Map<String, Integer> columnIndexes = null;
 
+        int rowNumber = 0;
         int processed = 0;
-        int successful = 0;
         int filtered = 0;
         int skippedNoCoupon = 0;
         int skippedNoMaturityDate = 0;
         int errors = 0;
 
-        for (int i = 0; i < csvData.size(); i++) {
-            String[] row = csvData.get(i);
-            if (row == headers) continue; // Skip header row
-            
-            processed++;
-            try {
-                MoexBond bond = parseRow(row, columnIndexes);
-                if (bond != null && bond.getIsin() != null) {
-                    // Валидация parsed bond
-                    ValidationResult validation = validateBond(bond);
-                    if (validation.isValid()) {
-                        applicationContext.getBean(MoexService.class).saveBond(bond);
-                        successful++;
-                        log.debug("Processed bond: {}", bond.getIsin());
-                    } else {
-                        // Определяем тип ошибки валидации для статистики
-                        String reason = validation.getReason();
-                        if (reason.contains("дата погашения")) {
-                            skippedNoMaturityDate++;
+        BatchWriter writer = new BatchWriter();
+        try {
+            String[] row;
+            while ((row = csvReader.readNext()) != null) {
+                rowNumber++;
+                if (columnIndexes == null) {
+                    // Заголовки могут быть не в первой строке: строки до них пропускаются
+                    if (row.length > 0 && containsKey(row, "ISIN")) {
+                        columnIndexes = mapColumns(row);
+                        log.debug("Found columns: {}", columnIndexes);
+                    }
+                    continue;
+                }
+
+                processed++;
+                try {
+                    MoexBond bond = parseRow(row, columnIndexes);
+                    if (bond != null && bond.getIsin() != null) {
+                        // Валидация parsed bond
+                        ValidationResult validation = validateBond(bond);
+                        if (validation.isValid()) {
+                            writer.add(bond);
+                            log.debug("Processed bond: {}", bond.getIsin());
                         } else {
-                            skippedNoCoupon++;
+                            // Определяем тип ошибки валидации для статистики
+                            String reason = validation.getReason();
+                            if (reason.contains("дата погашения")) {
+                                skippedNoMaturityDate++;
+                            } else {
+                                skippedNoCoupon++;
+                            }
+                            log.info("Облигация {} пропущена: {}", validation.getIsin(), reason);
                         }
-                        log.info("Облигация {} пропущена: {}", validation.getIsin(), reason);
-                    }
-                } else {
-                    // Проверим причину пропуска записи (null bond)
-                    String isin = getValue(row, columnIndexes, "ISIN");
-                    String faceUnit = getValue(row, columnIndexes, "FACEUNIT");
-                    
-                    if (isin != null && !isin.trim().isEmpty()) {
-                        if (!"RUB".equals(faceUnit)) {
-                            filtered++;
-                            log.debug("Filtered non-RUB bond: {} ({})", isin, faceUnit);
+                    } else {
+                        // Проверим причину пропуска записи (null bond)
+                        String isin = getValue(row, columnIndexes, "ISIN");
+                        String faceUnit = getValue(row, columnIndexes, "FACEUNIT");
+                        
+                        if (isin != null && !isin.trim().isEmpty()) {
+                            if (!"RUB".equals(faceUnit)) {
+                                filtered++;
+                                log.debug("Filtered non-RUB bond: {} ({})", isin, faceUnit);
+                            } else {
+                                errors++;
+                                log.debug("Skipped invalid bond: {}", isin);
+                            }
                         } else {
                             errors++;
-                            log.debug("Skipped invalid bond: {}", isin);
+                            log.debug("Skipped invalid row: {}", Arrays.toString(row));
                         }
-                    } else {
-                        errors++;
-                        log.debug("Skipped invalid row: {}", Arrays.toString(row));
                     }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    errors++;
+                    log.debug("Error processing row {}: {}", rowNumber, e.getMessage());
                 }
-            } catch (Exception e) {
-                errors++;
-                log.debug("Error processing row {}: {}", i, e.getMessage());
             }
+        } finally {
+            writer.close();
+        }
+
+        if (columnIndexes == null) {
+            log.error("Headers not found in CSV data");
+            return;
         }
 
-        log.info("MOEX parsing statistics - Processed: {}, Successful: {}, Filtered (non-RUB): {}, Skipped (no coupon data): {}, Skipped (no maturity date): {}, Errors: {}", 
-                processed, successful, filtered, skippedNoCoupon, skippedNoMaturityDate, errors);
+        log.info("MOEX parsing statistics - Processed: {}, Successful: {} (inserted or changed: {}), Filtered (non-RUB): {}, Skipped (no coupon data): {}, Skipped (no maturity date): {}, Errors: {}", 
+                processed, writer.getSaved(), writer.getChanged(), filtered, skippedNoCoupon, skippedNoMaturityDate, errors + writer.getFailed());
     }
 
-    private String[] findHeaders(List<String[]> csvData) {
-        for (String[] row : csvData) {
-            if (row.length > 0 && containsKey(row, "ISIN")) {
-                return row;
+    /**
+     * Запись облигаций в БД пачками по write-batch-size в отдельном потоке.
+     * В очереди на запись не больше write-queue-capacity пачек: если БД не успевает, разбор CSV ждет,
+     * поэтому память не зависит от размера файла.
+     */
+    private class BatchWriter {
+        private final int batchSize = Math.max(1, moexConfig.getWriteBatchSize());
+        private final Semaphore pendingBatches = new Semaphore(Math.max(1, moexConfig.getWriteQueueCapacity()));
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "moex-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final AtomicInteger saved = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger changed = new AtomicInteger();
+        private List<MoexBond> batch = new ArrayList<>();
+
+        void add(MoexBond bond) throws InterruptedException {
+            batch.add(bond);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        int getSaved() {
+            return saved.get();
+        }
+
+        int getFailed() {
+            return failed.get();
+        }
+
+        int getChanged() {
+            return changed.get();
+        }
+
+        /**
+         * Дописывает последнюю пачку и ждет завершения записи
+         */
+        void close() throws InterruptedException {
+            try {
+                flush();
+            } finally {
+                executor.shutdown();
+                if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+                    log.error("MOEX bonds writer did not finish in 10 minutes");
+                    executor.shutdownNow();
+                }
+            }
+        }
+
+        private void flush() throws InterruptedException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<MoexBond> bonds = batch;
+            batch = new ArrayList<>(batchSize);
+            pendingBatches.acquire();
+            executor.execute(() -> {
+                try {
+                    write(bonds);
+                } finally {
+                    pendingBatches.release();
+                }
+            });
+        }
+
+        private void write(List<MoexBond> bonds) {
+            MoexService self = applicationContext.getBean(MoexService.class);
+            try {
+                changed.addAndGet(self.saveBonds(bonds));
+                saved.addAndGet(bonds.size());
+            } catch (Exception e) {
+                // Ошибка в пачке не должна терять остальные облигации: повтор по одной
+                log.warn("Error saving batch of {} MOEX bonds, saving one by one: {}", bonds.size(), e.getMessage());
+                for (MoexBond bond : bonds) {
+                    try {
+                        self.saveBond(bond);
+                        saved.incrementAndGet();
+                        changed.incrementAndGet();
+                    } catch (Exception ex) {
+                        failed.incrementAndGet();
+                        log.debug("Error saving bond {}: {}", bond.getIsin(), ex.getMessage());
+                    }
+                }
             }
         }
-        return null;
     }
 
     private boolean containsKey(String[] row, String key) {
@@ -324,6 +423,16 @@ public class MoexService {
 
     @Transactional
     public void saveBond(MoexBond bond) {
-        moexBondRepository.saveOrUpdate(bond);
+        moexBondRepository.upsertAll(List.of(bond));
+    }
+
+    /**
+     * Сохраняет пачку облигаций в одной транзакции
+     *
+     * @return число вставленных или измененных облигаций
+     */
+    @Transactional
+    public int saveBonds(List<MoexBond> bonds) {
+        return moexBondRepository.upsertAll(bonds);
     }
 }
\ No newline at end of file
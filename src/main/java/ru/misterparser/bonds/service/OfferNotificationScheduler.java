@@ -14,7 +14,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +26,7 @@ public class OfferNotificationScheduler {
     private final OfferSubscriptionRepository subscriptionRepository;
     private final BondRepository bondRepository;
     private final TelegramBotService telegramBotService;
+    private final TelegramOutboxService telegramOutboxService;
 
     /**
      * Отправляет ежедневные уведомления в 9:00 МСК
@@ -44,16 +45,20 @@ public class OfferNotificationScheduler {
                 return;
             }
 
+            // Облигации всех подписок - одним запросом
+            Map<String, Bond> bondsByIsin = bondRepository.findByIsins(subscriptions.stream()
+                    .map(OfferSubscription::getIsin)
+                    .collect(Collectors.toSet()))
+                    .stream()
+                    .collect(Collectors.toMap(Bond::getIsin, bond -> bond, (first, second) -> first));
+
             // Группируем подписки по chat_id
             Map<Long, List<Bond>> userOffers = new HashMap<>();
             
             for (OfferSubscription subscription : subscriptions) {
-                Long chatId = subscription.getChatId();
-                String isin = subscription.getIsin();
-                
-                Optional<Bond> bondOpt = bondRepository.findByIsin(isin);
-                if (bondOpt.isPresent()) {
-                    userOffers.computeIfAbsent(chatId, k -> new ArrayList<>()).add(bondOpt.get());
+                Bond bond = bondsByIsin.get(subscription.getIsin());
+                if (bond != null) {
+                    userOffers.computeIfAbsent(subscription.getChatId(), k -> new ArrayList<>()).add(bond);
                 }
             }
 
@@ -64,15 +69,16 @@ public class OfferNotificationScheduler {
                 List<Bond> bonds = entry.getValue();
                 
                 try {
-                    telegramBotService.sendOfferNotification(chatId, bonds);
+                    // Отправка - через очередь telegram_outbox после фиксации транзакции
+                    telegramOutboxService.enqueue(chatId, telegramBotService.buildOfferNotification(bonds));
                     sentNotifications++;
-                    log.debug("Отправлено уведомление пользователю {} о {} облигациях", chatId, bonds.size());
+                    log.debug("Поставлено в очередь уведомление пользователю {} о {} облигациях", chatId, bonds.size());
                 } catch (Exception e) {
-                    log.error("Ошибка отправки уведомления пользователю {}: {}", chatId, e.getMessage());
+                    log.error("Ошибка постановки уведомления пользователю {} в очередь: {}", chatId, e.getMessage());
                 }
             }
 
-            log.info("Завершена отправка уведомлений. Отправлено: {} пользователям, всего облигаций: {}", 
+            log.info("Завершена отправка уведомлений. Поставлено в очередь: {} пользователям, всего облигаций: {}", 
                        sentNotifications, subscriptions.size());
 
         } catch (Exception e) {
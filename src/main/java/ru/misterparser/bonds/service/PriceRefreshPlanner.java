@@ -0,0 +1,252 @@
+package ru.misterparser.bonds.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.misterparser.bonds.config.TBankConfig;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.model.TBankPrice;
+import ru.misterparser.bonds.model.UserFilterSettings;
+import ru.misterparser.bonds.repository.OfferSubscriptionRepository;
+import ru.misterparser.bonds.repository.TBankBondRepository.TBankBondWithFaceValue;
+import ru.misterparser.bonds.repository.UserFilterSettingsRepository;
+import ru.misterparser.bonds.repository.UserOrderRepository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Адаптивное расписание обновления цен T-Bank (sources.bonds.tbank.marketdata.priority).
+ * Каждой облигации назначается уровень с собственным интервалом обновления:
+ * HOT - облигация востребована (в топе пользователя, в списке подписки на рейтинг, в подписке на оферту
+ * или в сделках пользователя), WARM - цена недавно заметно менялась, COLD - остальные.
+ * За один запуск обновляются только облигации, интервал которых истек, не более max-bonds-per-run:
+ * сначала HOT, внутри уровня - дольше всех не обновлявшиеся; остальные переходят на следующий запуск.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PriceRefreshPlanner {
+
+    /** Вес нового изменения цены в сглаженной волатильности */
+    private static final double VOLATILITY_SMOOTHING = 0.5;
+
+    private final TBankConfig tBankConfig;
+    private final RatingNotificationService ratingNotificationService;
+    private final BondFilteringService bondFilteringService;
+    private final UserFilterSettingsRepository userFilterSettingsRepository;
+    private final OfferSubscriptionRepository offerSubscriptionRepository;
+    private final UserOrderRepository userOrderRepository;
+
+    public enum Tier {
+        HOT, WARM, COLD
+    }
+
+    private final Map<String, Instant> lastRefreshed = new ConcurrentHashMap<>();
+    private final Map<String, BigDecimal> lastMidPrices = new ConcurrentHashMap<>();
+    private final Map<String, Double> volatilityPercents = new ConcurrentHashMap<>();
+    private final Map<Tier, TierMetrics> metrics = new EnumMap<>(Tier.class);
+    private volatile Set<String> demandIsins = Set.of();
+    private volatile Instant demandRefreshedAt;
+
+    {
+        for (Tier tier : Tier.values()) {
+            metrics.put(tier, new TierMetrics());
+        }
+    }
+
+    private static class TierMetrics {
+        private volatile int bonds;
+        private volatile int due;
+        private volatile int selected;
+        private final AtomicLong selectedTotal = new AtomicLong();
+        private final AtomicLong deferredTotal = new AtomicLong();
+        /** Наибольшая задержка обновления относительно интервала уровня в последнем запуске */
+        private volatile long maxLagSeconds;
+    }
+
+    public boolean isEnabled() {
+        return tBankConfig.getMarketdata().getPriority().isEnabled();
+    }
+
+    /**
+     * Облигации, которые нужно обновить в этом запуске. Время обновления отмечается через markRefreshed
+     * только после получения ответа API, поэтому облигации с ошибкой запроса остаются в очереди.
+     */
+    public List<TBankBondWithFaceValue> selectDue(List<TBankBondWithFaceValue> bonds) {
+        TBankConfig.PriorityConfig config = tBankConfig.getMarketdata().getPriority();
+        refreshDemandIfStale(config);
+        Instant now = Instant.now();
+
+        Map<Tier, List<TBankBondWithFaceValue>> dueByTier = new EnumMap<>(Tier.class);
+        Map<Tier, Integer> bondsByTier = new EnumMap<>(Tier.class);
+        Map<Tier, Long> maxLag = new EnumMap<>(Tier.class);
+        for (Tier tier : Tier.values()) {
+            dueByTier.put(tier, new ArrayList<>());
+            bondsByTier.put(tier, 0);
+            maxLag.put(tier, 0L);
+        }
+        for (TBankBondWithFaceValue bond : bonds) {
+            Tier tier = tierOf(bond, config);
+            bondsByTier.merge(tier, 1, Integer::sum);
+            Instant refreshed = lastRefreshed.get(bond.getFigi());
+            if (refreshed == null) {
+                dueByTier.get(tier).add(bond);
+                continue;
+            }
+            long lag = Duration.between(refreshed, now).getSeconds() - intervalSeconds(tier, config);
+            if (lag >= 0) {
+                dueByTier.get(tier).add(bond);
+                maxLag.merge(tier, lag, Math::max);
+            }
+        }
+
+        // Сначала никогда не обновлявшиеся, затем дольше всех ждущие
+        Comparator<TBankBondWithFaceValue> oldestFirst = Comparator.comparing(
+                bond -> lastRefreshed.getOrDefault(bond.getFigi(), Instant.EPOCH));
+        int budget = config.getMaxBondsPerRun() > 0 ? config.getMaxBondsPerRun() : Integer.MAX_VALUE;
+        List<TBankBondWithFaceValue> selected = new ArrayList<>();
+        for (Tier tier : Tier.values()) {
+            List<TBankBondWithFaceValue> due = dueByTier.get(tier);
+            due.sort(oldestFirst);
+            int take = Math.min(due.size(), budget - selected.size());
+            selected.addAll(due.subList(0, take));
+
+            TierMetrics tierMetrics = metrics.get(tier);
+            tierMetrics.bonds = bondsByTier.get(tier);
+            tierMetrics.due = due.size();
+            tierMetrics.selected = take;
+            tierMetrics.maxLagSeconds = maxLag.get(tier);
+            tierMetrics.selectedTotal.addAndGet(take);
+            tierMetrics.deferredTotal.addAndGet(due.size() - take);
+        }
+        // Облигации, исчезнувшие из списка, не держим в памяти
+        if (lastRefreshed.size() > bonds.size()) {
+            Set<String> figis = bonds.stream().map(TBankBondWithFaceValue::getFigi).collect(Collectors.toSet());
+            lastRefreshed.keySet().retainAll(figis);
+            lastMidPrices.keySet().retainAll(figis);
+            volatilityPercents.keySet().retainAll(figis);
+        }
+
+        log.info("Price refresh plan: {} of {} bonds selected ({})", selected.size(), bonds.size(), getStatistics());
+        return selected;
+    }
+
+    /**
+     * Цена облигации получена (в том числе пустой стакан или отсутствие сделок)
+     */
+    public void markRefreshed(String figi) {
+        lastRefreshed.put(figi, Instant.now());
+    }
+
+    /**
+     * Учитывает новую цену облигации в ее волатильности
+     */
+    public void recordPrice(String figi, TBankPrice price) {
+        BigDecimal mid = midPrice(price);
+        if (mid == null || mid.signum() <= 0) {
+            return;
+        }
+        BigDecimal previous = lastMidPrices.put(figi, mid);
+        if (previous == null || previous.signum() <= 0) {
+            return;
+        }
+        double changePercent = mid.subtract(previous).abs()
+                .multiply(BigDecimal.valueOf(100))
+                .divide(previous, 6, RoundingMode.HALF_UP)
+                .doubleValue();
+        volatilityPercents.merge(figi, changePercent,
+                (old, change) -> old * (1 - VOLATILITY_SMOOTHING) + change * VOLATILITY_SMOOTHING);
+    }
+
+    public String getStatistics() {
+        Map<Tier, String> byTier = new LinkedHashMap<>();
+        metrics.forEach((tier, tierMetrics) -> byTier.put(tier, String.format(
+                "%d bonds, %d due, %d selected, max lag %d s, total selected %d, total deferred %d",
+                tierMetrics.bonds, tierMetrics.due, tierMetrics.selected, tierMetrics.maxLagSeconds,
+                tierMetrics.selectedTotal.get(), tierMetrics.deferredTotal.get())));
+        return String.format("demand %d ISIN (at %s), %s", demandIsins.size(), demandRefreshedAt, byTier);
+    }
+
+    private Tier tierOf(TBankBondWithFaceValue bond, TBankConfig.PriorityConfig config) {
+        // Тикер облигации T-Bank совпадает с ISIN (см. связь tbank_bonds.ticker = moex_bonds.isin)
+        if (demandIsins.contains(bond.getTicker())) {
+            return Tier.HOT;
+        }
+        if (volatilityPercents.getOrDefault(bond.getFigi(), 0.0) >= config.getVolatilityThresholdPercent()) {
+            return Tier.WARM;
+        }
+        return Tier.COLD;
+    }
+
+    private static long intervalSeconds(Tier tier, TBankConfig.PriorityConfig config) {
+        switch (tier) {
+            case HOT:
+                return config.getHotIntervalSeconds();
+            case WARM:
+                return config.getWarmIntervalSeconds();
+            default:
+                return config.getColdIntervalSeconds();
+        }
+    }
+
+    private void refreshDemandIfStale(TBankConfig.PriorityConfig config) {
+        Instant refreshedAt = demandRefreshedAt;
+        if (refreshedAt != null
+                && Duration.between(refreshedAt, Instant.now()).toMinutes() < config.getDemandRefreshMinutes()) {
+            return;
+        }
+        try {
+            Set<String> isins = new HashSet<>();
+            isins.addAll(ratingNotificationService.findSubscribedIsins());
+            isins.addAll(offerSubscriptionRepository.findAllIsins());
+            isins.addAll(userOrderRepository.findAllIsins());
+            isins.addAll(findUsersTopIsins(config.getUserTopN()));
+            demandIsins = isins;
+            log.info("Price refresh demand updated: {} ISIN", isins.size());
+        } catch (Exception e) {
+            // Остается предыдущее множество, повтор - при следующем запуске
+            log.error("Error updating price refresh demand", e);
+        }
+        demandRefreshedAt = Instant.now();
+    }
+
+    /**
+     * Первые topN облигаций топа каждого пользователя по его сохраненным фильтрам
+     */
+    private Set<String> findUsersTopIsins(int topN) {
+        if (topN <= 0) {
+            return Set.of();
+        }
+        Map<Long, BondFilteringService.FilterParams> paramsByUser = new LinkedHashMap<>();
+        for (UserFilterSettings settings : userFilterSettingsRepository.findAll()) {
+            BondFilteringService.FilterParams params = UserFilterSettingsService.toFilterParams(settings);
+            params.setLimit(params.getLimit() > 0 ? Math.min(params.getLimit(), topN) : topN);
+            paramsByUser.put(settings.getUserId(), params);
+        }
+        return bondFilteringService.getFilteredAndSortedBonds(paramsByUser).values().stream()
+                .flatMap(List::stream)
+                .map(Bond::getIsin)
+                .collect(Collectors.toSet());
+    }
+
+    private static BigDecimal midPrice(TBankPrice price) {
+        if (price.getPriceAsk() != null && price.getPriceBid() != null) {
+            return price.getPriceAsk().add(price.getPriceBid()).divide(BigDecimal.valueOf(2), 8, RoundingMode.HALF_UP);
+        }
+        return price.getPriceAsk() != null ? price.getPriceAsk() : price.getPriceBid();
+    }
+}
@@ -14,8 +14,13 @@ import ru.misterparser.bonds.repository.TelegramUserRepository;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,7 +33,7 @@ public class RatingNotificationService {
     private final RatingSubscriptionRepository subscriptionRepository;
     private final BondRepository bondRepository;
     private final TelegramUserRepository telegramUserRepository;
-    private final TelegramBotService telegramBotService;
+    private final TelegramOutboxService telegramOutboxService;
     private final BondFilteringService bondFilteringService;
     private final RatingColorService ratingColorService;
 
@@ -38,14 +43,30 @@ public class RatingNotificationService {
     @Transactional
     public void processRatingSubscriptions() {
         log.info("Начинаем обработку подписок на рейтинг...");
-        
-        List<RatingSubscription> subscriptionsToSend = subscriptionRepository.findSubscriptionsToSend();
-        
+        processSubscriptions(subscriptionRepository.findSubscriptionsToSend());
+    }
+
+    /**
+     * Обрабатывает подписки из списка ids, по которым наступило время отправки (вызывается планировщиком)
+     */
+    @Transactional
+    public void processRatingSubscriptions(Collection<Long> subscriptionIds) {
+        log.info("Начинаем обработку подписок на рейтинг {}", subscriptionIds);
+        processSubscriptions(subscriptionRepository.findSubscriptionsToSend(subscriptionIds));
+    }
+
+    private void processSubscriptions(List<RatingSubscription> subscriptionsToSend) {
         log.info("Найдено {} подписок для обработки", subscriptionsToSend.size());
         
+        // Облигации для всех подписок - одним проходом по снимку: доходности с комиссией считаются
+        // один раз на группу подписок с одинаковыми комиссией и учетом оферты
+        Map<Long, BondFilteringService.FilterParams> paramsBySubscription = new LinkedHashMap<>();
+        subscriptionsToSend.forEach(subscription -> paramsBySubscription.put(subscription.getId(), createFilterParams(subscription)));
+        Map<Long, List<Bond>> bondsBySubscription = bondFilteringService.getFilteredAndSortedBonds(paramsBySubscription);
+        
         for (RatingSubscription subscription : subscriptionsToSend) {
             try {
-                sendSubscriptionNotification(subscription, false);
+                sendSubscriptionNotification(subscription, false, () -> bondsBySubscription.get(subscription.getId()));
             } catch (Exception e) {
                 log.error("Ошибка при отправке уведомления по подписке {}: {}", 
                            subscription.getId(), e.getMessage(), e);
@@ -60,6 +81,11 @@ public class RatingNotificationService {
      */
     @Transactional
     public void sendSubscriptionNotification(RatingSubscription subscription, boolean forceMode) {
+        sendSubscriptionNotification(subscription, forceMode, () -> getFilteredBonds(subscription));
+    }
+
+    private void sendSubscriptionNotification(RatingSubscription subscription, boolean forceMode,
+                                              Supplier<List<Bond>> filteredBonds) {
         try {
             // Получаем пользователя
             Optional<TelegramUser> userOpt = telegramUserRepository.findById(subscription.getTelegramUserId());
@@ -75,7 +101,7 @@ public class RatingNotificationService {
             }
 
             // Получаем облигации согласно фильтрам подписки
-            List<Bond> bonds = getFilteredBonds(subscription);
+            List<Bond> bonds = filteredBonds.get();
             
             if (bonds.isEmpty()) {
                 log.debug("Нет облигаций, соответствующих фильтрам подписки {}", subscription.getId());
@@ -106,11 +132,31 @@ public class RatingNotificationService {
         }
     }
 
+    /**
+     * ISIN облигаций, которые сейчас попадают в списки включенных подписок (первые tickerCount каждой)
+     */
+    public Set<String> findSubscribedIsins() {
+        Map<Long, BondFilteringService.FilterParams> paramsBySubscription = new LinkedHashMap<>();
+        subscriptionRepository.findEnabled()
+                .forEach(subscription -> paramsBySubscription.put(subscription.getId(), createFilterParams(subscription)));
+        return bondFilteringService.getFilteredAndSortedBonds(paramsBySubscription).values().stream()
+                .flatMap(List::stream)
+                .map(Bond::getIsin)
+                .collect(Collectors.toSet());
+    }
+
     /**
      * Получает отфильтрованный список облигаций согласно параметрам подписки
      */
     private List<Bond> getFilteredBonds(RatingSubscription subscription) {
-        // Создаём параметры фильтрации для единого сервиса
+        // Используем единый сервис фильтрации и сортировки
+        return bondFilteringService.getFilteredAndSortedBonds(createFilterParams(subscription));
+    }
+
+    /**
+     * Параметры фильтрации для единого сервиса по параметрам подписки
+     */
+    private BondFilteringService.FilterParams createFilterParams(RatingSubscription subscription) {
         BondFilteringService.FilterParams params = new BondFilteringService.FilterParams();
         params.setMinWeeksToMaturity(subscription.getMinMaturityWeeks());
         params.setMaxWeeksToMaturity(subscription.getMaxMaturityWeeks());
@@ -118,11 +164,10 @@ public class RatingNotificationService {
         params.setMaxYield(subscription.getMaxYield());
         params.setIncludeOffer(subscription.isIncludeOffer());
         params.setCustomFeePercent(subscription.getFeePercent()); // Используем комиссию из подписки
-        params.setLimit(null); // Без ограничений, ограничим после
+        // Нужны только первые tickerCount облигаций (не меньше одной, чтобы отличить пустой результат)
+        params.setLimit(Math.max(subscription.getTickerCount(), 1));
         params.setSelectedRatings(subscription.getSelectedRatings()); // Используем рейтинги из подписки
-        
-        // Используем единый сервис фильтрации и сортировки
-        return bondFilteringService.getFilteredAndSortedBonds(params);
+        return params;
     }
 
     /**
@@ -242,7 +287,7 @@ public class RatingNotificationService {
         // Проверяем и обрезаем сообщение при необходимости
         String finalMessage = ensureMessageLength(message.toString(), subscription.getName());
         
-        telegramBotService.sendMessage(chatId, finalMessage);
+        telegramOutboxService.enqueue(chatId, finalMessage);
     }
 
     /**
@@ -288,7 +333,7 @@ public class RatingNotificationService {
         // Проверяем длину сообщения (хотя сообщение о пустых результатах обычно короткое)
         String finalMessage = ensureMessageLength(message.toString(), subscription.getName());
         
-        telegramBotService.sendMessage(chatId, finalMessage);
+        telegramOutboxService.enqueue(chatId, finalMessage);
     }
 
     /**
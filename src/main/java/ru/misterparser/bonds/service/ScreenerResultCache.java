@@ -0,0 +1,158 @@
+package ru.misterparser.bonds.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.ScreenerConfig;
+import ru.misterparser.bonds.model.Bond;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * LRU-кэш результатов скринера для одинаковых запросов (настройки фильтров по умолчанию общие у многих пользователей
+ * и подписок). Кэш привязан к снимку облигаций: при подмене снимка (новое поколение расчета или принудительное
+ * перечитывание) все записи сбрасываются. Размер ограничен числом записей и суммарным числом облигаций в результатах.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScreenerResultCache {
+
+    private final ScreenerConfig screenerConfig;
+
+    private final LinkedHashMap<Key, List<Bond>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private BondUniverseCache.BondUniverse universe;
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Нормализованные параметры запроса: значения по умолчанию подставлены, текст поиска приведен
+     * к нижнему регистру, рейтинги упорядочены. Дата входит в ключ, так как от нее зависит срок до погашения.
+     */
+    @Value
+    public static class Key {
+        long generation;
+        LocalDate date;
+        int minWeeksToMaturity;
+        int maxWeeksToMaturity;
+        BigDecimal minYield;
+        BigDecimal maxYield;
+        boolean includeOffer;
+        String searchText;
+        BigDecimal customFeePercent;
+        Integer limit;
+        List<String> selectedRatings;
+
+        public static Key of(BondFilteringService.FilterParams params, long generation, LocalDate date, BigDecimal yieldCap) {
+            String searchText = params.getSearchText() != null ? params.getSearchText().trim().toLowerCase() : "";
+            List<String> ratings = params.getSelectedRatings() != null
+                    ? params.getSelectedRatings().stream().distinct().sorted().collect(Collectors.toList())
+                    : List.of();
+            return new Key(
+                    generation,
+                    date,
+                    params.getMinWeeksToMaturity() != null ? params.getMinWeeksToMaturity() : 0,
+                    params.getMaxWeeksToMaturity() != null ? params.getMaxWeeksToMaturity() : 520,
+                    normalize(params.getMinYield()),
+                    normalize(params.getMaxYield() != null ? params.getMaxYield().min(yieldCap) : yieldCap),
+                    params.getIncludeOffer() != null && params.getIncludeOffer(),
+                    searchText.isEmpty() ? null : searchText,
+                    normalize(params.getCustomFeePercent()),
+                    params.getLimit(),
+                    ratings.isEmpty() ? null : ratings);
+        }
+
+        private static BigDecimal normalize(BigDecimal value) {
+            return value != null ? value.stripTrailingZeros() : null;
+        }
+    }
+
+    /**
+     * Результат из кэша или вычисленный loader; результат из кэша общий для всех запросов и не изменяется
+     */
+    public List<Bond> get(BondUniverseCache.BondUniverse currentUniverse, Key key, Supplier<List<Bond>> loader) {
+        if (!screenerConfig.isCacheEnabled()) {
+            return loader.get();
+        }
+        synchronized (this) {
+            invalidateIfStale(currentUniverse);
+            List<Bond> cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        // Расчет вне блокировки; одновременные промахи по одному ключу вычисляются независимо
+        List<Bond> result = Collections.unmodifiableList(loader.get());
+        synchronized (this) {
+            if (universe == currentUniverse && result.size() <= screenerConfig.getCacheMaxWeight()) {
+                List<Bond> previous = entries.put(key, result);
+                weight += result.size() - (previous != null ? previous.size() : 0);
+                evictIfNeeded();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сбрасывает все записи
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Счетчики попаданий, промахов, вытеснений и сбросов
+     */
+    public synchronized String getStatistics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        return String.format("Screener cache: %d entries, weight %d/%d, hits %d, misses %d (hit rate %.1f%%), evictions %d, invalidations %d",
+                entries.size(), weight, screenerConfig.getCacheMaxWeight(), hitCount, missCount,
+                total > 0 ? hitCount * 100.0 / total : 0.0, evictions.get(), invalidations.get());
+    }
+
+    private void invalidateIfStale(BondUniverseCache.BondUniverse currentUniverse) {
+        if (universe == currentUniverse) {
+            return;
+        }
+        if (universe != null) {
+            log.debug("Screener cache invalidated: bond universe generation {} -> {}, {} entries dropped",
+                    universe.getGeneration(), currentUniverse.getGeneration(), entries.size());
+            invalidations.incrementAndGet();
+        }
+        entries.clear();
+        weight = 0;
+        universe = currentUniverse;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<Key, List<Bond>>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > screenerConfig.getCacheMaxEntries() || weight > screenerConfig.getCacheMaxWeight())
+                && iterator.hasNext()) {
+            Map.Entry<Key, List<Bond>> eldest = iterator.next();
+            weight -= eldest.getValue().size();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ru.misterparser.bonds.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.TBankConfig;
+import ru.misterparser.bonds.util.TokenBucket;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Общий клиент REST API T-Bank Invest для сервисов инструментов и рыночных данных.
+ * Один HttpClient с пулом keep-alive соединений, ответы запрашиваются в gzip.
+ * Запросы выполняются асинхронно пулом из concurrency потоков; перед отправкой каждый запрос берет токен
+ * общего token bucket (rate-limit запросов в минуту). Заголовки x-ratelimit-remaining/x-ratelimit-reset
+ * ответа учитываются: при исчерпании лимита сервера все запросы ждут его сброса, ответ 429 повторяется.
+ */
+@Component
+@Slf4j
+public class TBankApiClient {
+
+    private static final String SERVICE_PREFIX = "/tinkoff.public.invest.api.contract.v1.";
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+
+    private final TBankConfig tBankConfig;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TokenBucket tokenBucket;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    // Момент (System.nanoTime), до которого сервер просит не отправлять запросы
+    private volatile long pausedUntilNanos = System.nanoTime();
+
+    public TBankApiClient(TBankConfig tBankConfig) {
+        this.tBankConfig = tBankConfig;
+        int concurrency = Math.max(1, tBankConfig.getConcurrency());
+        this.tokenBucket = new TokenBucket(Math.max(1, tBankConfig.getRateLimit()) / 60.0, concurrency);
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "tbank-api");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.requestTimeout = Duration.ofSeconds(Math.max(1, tBankConfig.getRequestTimeoutSeconds()));
+        // Собственный исполнитель HttpClient не задается: потоки пула заняты синхронным send()
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(requestTimeout)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Асинхронный вызов метода API, например "MarketDataService/GetOrderBook"
+     *
+     * @param request тело запроса, сериализуется в JSON
+     * @return разобранный JSON ответа
+     */
+    public CompletableFuture<JsonNode> postAsync(String method, Object request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(method, request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Синхронный вызов метода API
+     */
+    public JsonNode post(String method, Object request) throws IOException, InterruptedException {
+        try {
+            return postAsync(method, request).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Ожидает результат асинхронного вызова и возвращает исходное исключение вызова
+     */
+    public static JsonNode await(CompletableFuture<JsonNode> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Открывает серверный поток (REST-стриминг API: по одному JSON-сообщению на строку).
+     * Поток читается вызывающим потоком до закрытия; таймаут запроса не ограничивает длительность потока.
+     *
+     * @param baseUrl адрес API; null - api-url из конфигурации
+     */
+    public Stream<String> openStream(String baseUrl, String method, Object request) throws IOException, InterruptedException {
+        String url = (baseUrl != null && !baseUrl.isEmpty() ? baseUrl : tBankConfig.getApiUrl()) + SERVICE_PREFIX + method;
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", "Bearer " + tBankConfig.getToken())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)))
+                .build();
+        waitForServerLimit();
+        tokenBucket.acquire();
+        HttpResponse<Stream<String>> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofLines());
+        applyServerLimit(response);
+        if (response.statusCode() != 200) {
+            String error;
+            try (Stream<String> body = response.body()) {
+                error = body.collect(Collectors.joining("\n"));
+            }
+            throw new IOException("T-Bank API " + method + " returned " + response.statusCode() + ": " + error);
+        }
+        return response.body();
+    }
+
+    private JsonNode execute(String method, Object request) throws IOException, InterruptedException {
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(tBankConfig.getApiUrl() + SERVICE_PREFIX + method))
+                .timeout(requestTimeout)
+                .header("Authorization", "Bearer " + tBankConfig.getToken())
+                .header("Content-Type", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)))
+                .build();
+
+        for (int attempt = 0; ; attempt++) {
+            waitForServerLimit();
+            tokenBucket.acquire();
+            HttpResponse<InputStream> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+            applyServerLimit(response);
+            try (InputStream body = decode(response)) {
+                if (response.statusCode() == 200) {
+                    return objectMapper.readTree(body);
+                }
+                String error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                if (response.statusCode() == 429 && attempt < MAX_RATE_LIMIT_RETRIES) {
+                    log.warn("T-Bank API {}: 429, retrying after rate limit reset", method);
+                    continue;
+                }
+                throw new IOException("T-Bank API " + method + " returned " + response.statusCode() + ": " + error);
+            }
+        }
+    }
+
+    private void waitForServerLimit() throws InterruptedException {
+        long waitNanos = pausedUntilNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Лимит сервера исчерпан - следующие запросы ждут x-ratelimit-reset секунд
+     */
+    private void applyServerLimit(HttpResponse<?> response) {
+        boolean exhausted = response.statusCode() == 429
+                || header(response, "x-ratelimit-remaining").filter(value -> value <= 0).isPresent();
+        if (!exhausted) {
+            return;
+        }
+        // Без x-ratelimit-reset пауза в одну секунду
+        long resetSeconds = Math.max(1, header(response, "x-ratelimit-reset").orElse(1L));
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(resetSeconds);
+        synchronized (this) {
+            if (until - pausedUntilNanos > 0) {
+                pausedUntilNanos = until;
+            }
+        }
+        log.debug("T-Bank rate limit exhausted, pausing requests for {} s", resetSeconds);
+    }
+
+    private static Optional<Long> header(HttpResponse<?> response, String name) {
+        try {
+            return response.headers().firstValue(name).map(String::trim).map(Long::parseLong);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .filter(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .isPresent();
+        return gzip ? new GZIPInputStream(response.body()) : response.body();
+    }
+
+    private static IOException unwrap(Throwable cause) throws InterruptedException {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
+}
@@ -1,14 +1,11 @@
 package ru.misterparser.bonds.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 import ru.misterparser.bonds.config.TBankConfig;
 import ru.misterparser.bonds.model.TBankBond;
 import ru.misterparser.bonds.repository.TBankBondRepository;
@@ -16,17 +13,15 @@ import ru.misterparser.bonds.repository.TBankBondRepository;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class TBankInstrumentsService {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final RateLimitService rateLimitService = new RateLimitService();
-
     private final TBankConfig tBankConfig;
+    private final TBankApiClient tBankApiClient;
     private final TBankBondRepository tBankBondRepository;
     private final ApplicationContext applicationContext;
 
@@ -54,85 +49,50 @@ public class TBankInstrumentsService {
         }
     }
 
-    private String getBrandNameFromAsset(String assetUid) throws Exception {
-        rateLimitService.waitForRateLimit();
-        
-        String url = tBankConfig.getApiUrl() + "/tinkoff.public.invest.api.contract.v1.InstrumentsService/GetAssetBy";
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + tBankConfig.getToken());
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
-        String requestBody = String.format("{\"id\": \"%s\"}", assetUid);
-        HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
-        
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-        
-        if (response.getStatusCode() == HttpStatus.OK) {
-            JsonNode rootNode = objectMapper.readTree(response.getBody());
-            JsonNode assetNode = rootNode.path("asset");
-            JsonNode brandNode = assetNode.path("brand");
-            String brandName = brandNode.path("name").asText();
-            
-            if (!brandName.isEmpty()) {
-                log.debug("Found brand ID for asset {}: {}", assetUid, brandName);
-                return brandName;
-            }
-        } else {
-            log.debug("Failed to get asset details for asset {}: {}", assetUid, response.getStatusCode());
+    /**
+     * Название бренда из ответа GetAssetBy
+     */
+    private String extractBrandName(String assetUid, JsonNode rootNode) {
+        JsonNode assetNode = rootNode.path("asset");
+        JsonNode brandNode = assetNode.path("brand");
+        String brandName = brandNode.path("name").asText();
+        
+        if (!brandName.isEmpty()) {
+            log.debug("Found brand ID for asset {}: {}", assetUid, brandName);
+            return brandName;
         }
         
         return null;
     }
 
     private String getBrandByUid(String brandId) throws Exception {
-        rateLimitService.waitForRateLimit();
-        
-        String url = tBankConfig.getApiUrl() + "/tinkoff.public.invest.api.contract.v1.InstrumentsService/GetBrandBy";
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + tBankConfig.getToken());
-        headers.setContentType(MediaType.APPLICATION_JSON);
+        JsonNode rootNode = tBankApiClient.post("InstrumentsService/GetBrandBy", Map.of("id", brandId));
+        JsonNode brandNode = rootNode.path("brand");
+        String brandName = brandNode.path("name").asText();
         
-        String requestBody = String.format("{\"id\": \"%s\"}", brandId);
-        HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
-        
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-        
-        if (response.getStatusCode() == HttpStatus.OK) {
-            JsonNode rootNode = objectMapper.readTree(response.getBody());
-            JsonNode brandNode = rootNode.path("brand");
-            String brandName = brandNode.path("name").asText();
-            
-            if (!brandName.isEmpty()) {
-                log.debug("Found brand name for brand {}: {}", brandId, brandName);
-                return brandName;
-            }
-        } else {
-            log.debug("Failed to get brand for brand ID {}: {}", brandId, response.getStatusCode());
+        if (!brandName.isEmpty()) {
+            log.debug("Found brand name for brand {}: {}", brandId, brandName);
+            return brandName;
         }
         
         return null;
     }
 
     private void loadInstruments() throws Exception {
-        rateLimitService.waitForRateLimit();
-        
-        String url = tBankConfig.getApiUrl() + "/tinkoff.public.invest.api.contract.v1.InstrumentsService/Bonds";
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + tBankConfig.getToken());
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
-        String requestBody = "{\"instrumentStatus\": \"INSTRUMENT_STATUS_BASE\"}";
-        HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
-        
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-        
-        if (response.getStatusCode() == HttpStatus.OK) {
-            JsonNode rootNode = objectMapper.readTree(response.getBody());
-            JsonNode instrumentsNode = rootNode.path("instruments");
-            
+        JsonNode rootNode = tBankApiClient.post("InstrumentsService/Bonds", Map.of("instrumentStatus", "INSTRUMENT_STATUS_BASE"));
+        JsonNode instrumentsNode = rootNode.path("instruments");
+
+        // Активы всех облигаций запрашиваются сразу, запросы GetAssetBy выполняются параллельно
+        Map<String, CompletableFuture<JsonNode>> assets = new HashMap<>();
+        for (JsonNode instrumentNode : instrumentsNode) {
+            String assetUid = instrumentNode.path("assetUid").asText();
+            if (!assetUid.isEmpty()) {
+                assets.computeIfAbsent(assetUid, uid -> tBankApiClient.postAsync("InstrumentsService/GetAssetBy", Map.of("id", uid)));
+            }
+        }
+        log.info("Requested {} assets for {} T-Bank instruments", assets.size(), instrumentsNode.size());
+
+        try {
             int processed = 0;
             int updated = 0;
             int newRecords = 0;
@@ -155,16 +115,17 @@ public class TBankInstrumentsService {
                         tBankBond.setTicker(ticker);
                         tBankBond.setAssetUid(assetUid);
                         
-                        // Обогащаем данными о бренде с помощью методов GetAssetBy и GetBrandBy
+                        // Обогащаем данными о бренде из ответа GetAssetBy
                         String brandName = null;
                         if (!assetUid.isEmpty()) {
                             try {
-                                // Получаем полную информацию об активе для извлечения brand ID
-                                brandName = getBrandNameFromAsset(assetUid);
+                                brandName = extractBrandName(assetUid, TBankApiClient.await(assets.get(assetUid)));
                                 if (brandName != null) {
                                     tBankBond.setBrandName(brandName);
                                     log.debug("Enriched bond {} with brand: {}", ticker, brandName);
                                 }
+                            } catch (InterruptedException e) {
+                                throw e;
                             } catch (Exception e) {
                                 log.debug("Failed to get brand for asset {}: {}", assetUid, e.getMessage());
                             }
@@ -195,35 +156,16 @@ public class TBankInstrumentsService {
                         
                         log.debug("Processed T-Bank bond: {} (FIGI: {})", ticker, figi);
                     }
+                } catch (InterruptedException e) {
+                    throw e;
                 } catch (Exception e) {
                     log.debug("Error processing instrument: {}", e.getMessage());
                 }
             }
             
             log.info("T-Bank instruments statistics - Processed: {}, Updated: {}, New records: {}", processed, updated, newRecords);
-            
-        } else {
-            log.error("Failed to load instruments: {}", response.getStatusCode());
-        }
-    }
-
-    private static class RateLimitService {
-        private long lastRequestTime = 0;
-        private static final long REQUEST_INTERVAL = 60000 / 300; // 60 requests per minute
-        
-        public synchronized void waitForRateLimit() {
-            long currentTime = System.currentTimeMillis();
-            long timeSinceLastRequest = currentTime - lastRequestTime;
-            
-            if (timeSinceLastRequest < REQUEST_INTERVAL) {
-                try {
-                    Thread.sleep(REQUEST_INTERVAL - timeSinceLastRequest);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            
-            lastRequestTime = System.currentTimeMillis();
+        } finally {
+            assets.values().forEach(asset -> asset.cancel(false));
         }
     }
 
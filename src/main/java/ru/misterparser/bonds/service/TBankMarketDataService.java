@@ -1,15 +1,12 @@
 package ru.misterparser.bonds.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.env.Environment;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 import ru.misterparser.bonds.config.TBankConfig;
 import ru.misterparser.bonds.repository.TBankBondRepository.TBankBondWithFaceValue;
 import ru.misterparser.bonds.model.TBankPrice;
@@ -18,26 +15,36 @@ import ru.misterparser.bonds.repository.TBankPriceRepository;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class TBankMarketDataService {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final RateLimitService rateLimitService = new RateLimitService();
+    private static final String GET_ORDER_BOOK = "MarketDataService/GetOrderBook";
+    private static final String GET_LAST_PRICES = "MarketDataService/GetLastPrices";
 
     private final TBankConfig tBankConfig;
+    private final TBankApiClient tBankApiClient;
+    private final TBankMarketDataStream tBankMarketDataStream;
     private final TBankBondRepository tBankBondRepository;
     private final TBankPriceRepository tBankPriceRepository;
     private final Environment environment;
     private final CalculationService calculationService;
+    private final RatingNotificationService ratingNotificationService;
+    private final PriceRefreshPlanner priceRefreshPlanner;
+    private final TradingCalendarService tradingCalendarService;
     private final ApplicationContext applicationContext;
     
     private final Random random = new Random();
@@ -53,65 +60,61 @@ public class TBankMarketDataService {
             return;
         }
 
-        // В режиме тестирования пропускаем проверку торговых часов
+        if (tBankMarketDataStream.isConnected()) {
+            log.info("T-Bank market data stream is connected, skipping price polling");
+            return;
+        }
+
         boolean isTestMode = isRandomPricesMode();
-        if (!isTestMode && !isMarketHours()) {
-            log.info("Outside market hours, skipping price update");
+        if (!isUpdateWindow()) {
+            log.info("Outside trading sessions, skipping price update");
             return;
         }
 
         if (isTestMode) {
             log.info("Starting T-Bank prices update in TEST mode with random prices");
         } else {
-            log.info("Starting T-Bank prices update during market hours");
+            log.info("Starting T-Bank prices update during trading session");
         }
 
         try {
             List<TBankBondWithFaceValue> bonds = tBankBondRepository.findAllWithFaceValues();
             log.info("Found {} bonds with FIGI for price update", bonds.size());
 
-            int updated = 0;
-            int skipped = 0;
-            int errors = 0;
-
+            UpdateStatistics statistics = new UpdateStatistics();
+            List<TBankBondWithFaceValue> pricedBonds = new ArrayList<>();
             for (TBankBondWithFaceValue bond : bonds) {
-                try {
-                    // Проверяем наличие face_value из moex_bonds
-                    if (bond.getFaceValue() == null) {
-                        skipped++;
-                        log.info("Skipping price update for FIGI {} (ticker {}): face_value not found in moex_bonds", 
-                                bond.getFigi(), bond.getTicker());
-                        continue;
-                    }
-                    
-                    TBankPrice marketPrices;
-                    if (isRandomPricesMode()) {
-                        marketPrices = generateRandomPrices(bond.getFaceValue());
-                    } else {
-                        marketPrices = getMarketPrices(bond);
-                    }
-                    
-                    if (marketPrices != null && (marketPrices.getPriceAsk() != null || marketPrices.getPriceBid() != null)) {
-                        marketPrices.setFigi(bond.getFigi());
-                        
-                        applicationContext.getBean(TBankMarketDataService.class).saveTBankPrice(marketPrices);
-                        updated++;
-                        log.debug("Updated prices for FIGI {}: ask={}, bid={}", bond.getFigi(), 
-                                marketPrices.getPriceAsk(), marketPrices.getPriceBid());
-                    } else {
-                        skipped++;
-                        log.debug("No market prices available for FIGI {}", bond.getFigi());
-                    }
-                } catch (Exception e) {
-                    errors++;
-                    log.debug("Error updating price for FIGI {}: {}", bond.getFigi(), e.getMessage());
+                // Проверяем наличие face_value из moex_bonds
+                if (bond.getFaceValue() == null) {
+                    statistics.skipped++;
+                    log.info("Skipping price update for FIGI {} (ticker {}): face_value not found in moex_bonds", 
+                            bond.getFigi(), bond.getTicker());
+                } else {
+                    pricedBonds.add(bond);
                 }
             }
 
-            log.info("T-Bank prices statistics - Updated: {}, Skipped: {}, Errors: {}", updated, skipped, errors);
+            // Адаптивный режим: только облигации, интервал обновления которых истек, в пределах бюджета запуска
+            if (priceRefreshPlanner.isEnabled()) {
+                pricedBonds = priceRefreshPlanner.selectDue(pricedBonds);
+            }
+
+            TBankConfig.MarketDataConfig marketDataConfig = tBankConfig.getMarketdata();
+            if (isTestMode || marketDataConfig.getMode() != TBankConfig.Mode.LAST_PRICES) {
+                updateFromOrderBooks(pricedBonds, statistics, true);
+            } else {
+                updateFromLastPrices(pricedBonds, statistics);
+                List<TBankBondWithFaceValue> orderBookBonds = selectOrderBookBonds(pricedBonds, marketDataConfig.getOrderbookPolicy());
+                log.info("Requesting order books for {} bonds (policy {})", orderBookBonds.size(), marketDataConfig.getOrderbookPolicy());
+                // Волатильность в этом режиме считается по ценам сделок, а не по стакану
+                updateFromOrderBooks(orderBookBonds, statistics, false);
+            }
+
+            log.info("T-Bank prices statistics - Updated: {}, Skipped: {}, Errors: {}", 
+                    statistics.updated, statistics.skipped, statistics.errors);
             
             // Запускаем автоматический пересчет показателей после обновления цен
-            if (updated > 0) {
+            if (statistics.updated > 0) {
                 log.info("Starting automatic calculation after price update");
                 try {
                     calculationService.calculateAllBonds();
@@ -121,26 +124,147 @@ public class TBankMarketDataService {
                 }
             }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("T-Bank prices update interrupted");
         } catch (Exception e) {
             log.error("Error during T-Bank prices update", e);
         }
     }
     
-    private boolean isMarketHours() {
-        LocalDateTime now = LocalDateTime.now();
-        DayOfWeek dayOfWeek = now.getDayOfWeek();
-        LocalTime timeNow = now.toLocalTime();
-        
-        // Проверяем рабочие дни (понедельник-пятница)
-        if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
-            return false;
+    /**
+     * Цены из стакана (лучшие ask/bid) - один запрос GetOrderBook на облигацию. Запросы отправляются сразу
+     * все и выполняются параллельно общим клиентом T-Bank, результаты сохраняются в порядке облигаций.
+     */
+    private void updateFromOrderBooks(List<TBankBondWithFaceValue> bonds, UpdateStatistics statistics,
+                                      boolean recordVolatility) throws InterruptedException {
+        if (isRandomPricesMode()) {
+            for (TBankBondWithFaceValue bond : bonds) {
+                savePricesIfPresent(bond, generateRandomPrices(bond.getFaceValue()), statistics, recordVolatility);
+            }
+            return;
         }
+
+        List<CompletableFuture<JsonNode>> orderBooks = new ArrayList<>(bonds.size());
+        for (TBankBondWithFaceValue bond : bonds) {
+            orderBooks.add(tBankApiClient.postAsync(GET_ORDER_BOOK, Map.of("figi", bond.getFigi(), "depth", 1)));
+        }
+        for (int i = 0; i < bonds.size(); i++) {
+            TBankBondWithFaceValue bond = bonds.get(i);
+            try {
+                savePricesIfPresent(bond, parseOrderBook(TBankApiClient.await(orderBooks.get(i)), bond), statistics,
+                        recordVolatility);
+            } catch (InterruptedException e) {
+                orderBooks.forEach(orderBook -> orderBook.cancel(false));
+                throw e;
+            } catch (Exception e) {
+                statistics.errors++;
+                log.debug("Error updating price for FIGI {}: {}", bond.getFigi(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Цены последних сделок всех облигаций - запросами GetLastPrices по last-prices-chunk-size FIGI,
+     * выполняемыми параллельно. Стакана в ответе нет, поэтому цена последней сделки записывается
+     * и как ask, и как bid.
+     */
+    private void updateFromLastPrices(List<TBankBondWithFaceValue> bonds, UpdateStatistics statistics) throws InterruptedException {
+        int chunkSize = Math.max(1, tBankConfig.getMarketdata().getLastPricesChunkSize());
+        List<List<TBankBondWithFaceValue>> chunks = new ArrayList<>();
+        List<CompletableFuture<JsonNode>> responses = new ArrayList<>();
+        for (int from = 0; from < bonds.size(); from += chunkSize) {
+            List<TBankBondWithFaceValue> chunk = bonds.subList(from, Math.min(bonds.size(), from + chunkSize));
+            List<String> figis = chunk.stream().map(TBankBondWithFaceValue::getFigi).collect(Collectors.toList());
+            chunks.add(chunk);
+            responses.add(tBankApiClient.postAsync(GET_LAST_PRICES, Map.of("instrumentId", figis)));
+        }
+
+        for (int c = 0; c < chunks.size(); c++) {
+            List<TBankBondWithFaceValue> chunk = chunks.get(c);
+            Map<String, BigDecimal> pricePercents;
+            try {
+                pricePercents = parseLastPricePercents(TBankApiClient.await(responses.get(c)));
+                log.debug("Received {} last prices for {} FIGI", pricePercents.size(), chunk.size());
+            } catch (InterruptedException e) {
+                responses.forEach(response -> response.cancel(false));
+                throw e;
+            } catch (Exception e) {
+                statistics.errors += chunk.size();
+                log.error("Error requesting last prices for {} bonds: {}", chunk.size(), e.getMessage());
+                continue;
+            }
+            for (TBankBondWithFaceValue bond : chunk) {
+                BigDecimal percent = pricePercents.get(bond.getFigi());
+                priceRefreshPlanner.markRefreshed(bond.getFigi());
+                if (percent == null) {
+                    statistics.skipped++;
+                    log.debug("No last price available for FIGI {}", bond.getFigi());
+                    continue;
+                }
+                try {
+                    BigDecimal price = toAbsolutePrice(percent, bond.getFaceValue());
+                    TBankPrice marketPrices = new TBankPrice();
+                    marketPrices.setPriceAsk(price);
+                    marketPrices.setPriceBid(price);
+                    savePricesIfPresent(bond, marketPrices, statistics, true);
+                } catch (Exception e) {
+                    statistics.errors++;
+                    log.debug("Error updating last price for FIGI {}: {}", bond.getFigi(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Облигации, для которых в режиме LAST_PRICES нужен стакан
+     */
+    private List<TBankBondWithFaceValue> selectOrderBookBonds(List<TBankBondWithFaceValue> bonds, TBankConfig.OrderBookPolicy policy) {
+        if (policy == TBankConfig.OrderBookPolicy.ALL) {
+            return bonds;
+        }
+        if (policy != TBankConfig.OrderBookPolicy.SUBSCRIBED) {
+            return List.of();
+        }
+        // Тикер облигации T-Bank совпадает с ISIN (см. связь tbank_bonds.ticker = moex_bonds.isin)
+        Set<String> subscribedIsins = ratingNotificationService.findSubscribedIsins();
+        return bonds.stream()
+                .filter(bond -> subscribedIsins.contains(bond.getTicker()))
+                .collect(Collectors.toList());
+    }
+
+    private void savePricesIfPresent(TBankBondWithFaceValue bond, TBankPrice marketPrices, UpdateStatistics statistics,
+                                     boolean recordVolatility) {
+        // Ответ получен - следующее обновление облигации через интервал ее уровня
+        priceRefreshPlanner.markRefreshed(bond.getFigi());
+        if (marketPrices == null || (marketPrices.getPriceAsk() == null && marketPrices.getPriceBid() == null)) {
+            statistics.skipped++;
+            log.debug("No market prices available for FIGI {}", bond.getFigi());
+            return;
+        }
+        marketPrices.setFigi(bond.getFigi());
         
-        // Проверяем торговые часы 09:50 - 18:50
-        LocalTime marketOpen = LocalTime.of(9, 50);
-        LocalTime marketClose = LocalTime.of(18, 50);
-        
-        return timeNow.isAfter(marketOpen) && timeNow.isBefore(marketClose);
+        applicationContext.getBean(TBankMarketDataService.class).saveTBankPrice(marketPrices);
+        if (recordVolatility) {
+            priceRefreshPlanner.recordPrice(bond.getFigi(), marketPrices);
+        }
+        statistics.updated++;
+        log.debug("Updated prices for FIGI {}: ask={}, bid={}", bond.getFigi(), 
+                marketPrices.getPriceAsk(), marketPrices.getPriceBid());
+    }
+
+    private static class UpdateStatistics {
+        private int updated;
+        private int skipped;
+        private int errors;
+    }
+
+    /**
+     * Имеет ли смысл обновлять цены сейчас: идет торговая сессия по календарю биржи
+     * (в режиме тестирования - всегда)
+     */
+    public boolean isUpdateWindow() {
+        return isRandomPricesMode() || tradingCalendarService.isTradingNow();
     }
     
     private boolean isRandomPricesMode() {
@@ -183,92 +307,91 @@ public class TBankMarketDataService {
     }
 
 
-    private TBankPrice getMarketPrices(TBankBondWithFaceValue bond) throws Exception {
-        rateLimitService.waitForRateLimit();
-
-        String url = tBankConfig.getApiUrl() + "/tinkoff.public.invest.api.contract.v1.MarketDataService/GetOrderBook";
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + tBankConfig.getToken());
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        String requestBody = String.format("{\"figi\": \"%s\", \"depth\": 1}", bond.getFigi());
-        HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+    private TBankPrice parseOrderBook(JsonNode rootNode, TBankBondWithFaceValue bond) {
+        TBankPrice prices = new TBankPrice();
+        
+        // Получаем лучшую цену ask (цена продажи/покупки для инвестора)
+        JsonNode asksNode = rootNode.path("asks");
+        if (asksNode.isArray() && asksNode.size() > 0) {
+            BigDecimal askPrice = extractPrice(asksNode.get(0).path("price"), bond.getFaceValue());
+            prices.setPriceAsk(askPrice);
+            log.debug("Extracted ask price for FIGI {}: {}", bond.getFigi(), askPrice);
+        }
+        
+        // Получаем лучшую цену bid (цена покупки/продажи для инвестора)
+        JsonNode bidsNode = rootNode.path("bids");
+        if (bidsNode.isArray() && bidsNode.size() > 0) {
+            BigDecimal bidPrice = extractPrice(bidsNode.get(0).path("price"), bond.getFaceValue());
+            prices.setPriceBid(bidPrice);
+            log.debug("Extracted bid price for FIGI {}: {}", bond.getFigi(), bidPrice);
+        }
+        
+        // Возвращаем цены только если хотя бы одна из них доступна
+        if (prices.getPriceAsk() != null || prices.getPriceBid() != null) {
+            return prices;
+        }
+        log.info("Стакан пуст для ticker: {}", bond.getTicker());
+        return null;
+    }
 
-        if (response.getStatusCode() == HttpStatus.OK) {
-            JsonNode rootNode = objectMapper.readTree(response.getBody());
-            
-            TBankPrice prices = new TBankPrice();
-            
-            // Получаем лучшую цену ask (цена продажи/покупки для инвестора)
-            JsonNode asksNode = rootNode.path("asks");
-            if (asksNode.isArray() && asksNode.size() > 0) {
-                BigDecimal askPrice = extractPrice(asksNode.get(0).path("price"), bond.getFaceValue());
-                prices.setPriceAsk(askPrice);
-                log.debug("Extracted ask price for FIGI {}: {}", bond.getFigi(), askPrice);
+    /**
+     * Цены последних сделок по FIGI в процентах от номинала; облигации без сделок или со сделкой
+     * старше last-price-max-age-minutes в результат не попадают
+     */
+    private Map<String, BigDecimal> parseLastPricePercents(JsonNode rootNode) {
+        Instant notBefore = Instant.now().minus(Duration.ofMinutes(tBankConfig.getMarketdata().getLastPriceMaxAgeMinutes()));
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (JsonNode lastPrice : rootNode.path("lastPrices")) {
+            if (!isRecent(lastPrice.path("time"), notBefore)) {
+                continue;
             }
-            
-            // Получаем лучшую цену bid (цена покупки/продажи для инвестора)
-            JsonNode bidsNode = rootNode.path("bids");
-            if (bidsNode.isArray() && bidsNode.size() > 0) {
-                BigDecimal bidPrice = extractPrice(bidsNode.get(0).path("price"), bond.getFaceValue());
-                prices.setPriceBid(bidPrice);
-                log.debug("Extracted bid price for FIGI {}: {}", bond.getFigi(), bidPrice);
-            }
-            
-            // Возвращаем цены только если хотя бы одна из них доступна
-            if (prices.getPriceAsk() != null || prices.getPriceBid() != null) {
-                return prices;
-            } else {
-                log.info("Стакан пуст для ticker: {}", bond.getTicker());
+            BigDecimal percent = extractPercent(lastPrice.path("price"));
+            // Нулевая цена - сделок по инструменту не было
+            if (percent != null && percent.signum() > 0) {
+                result.put(lastPrice.path("figi").asText(), percent);
             }
-        } else {
-            log.info("Неожиданный код ответа от T-Bank: {}", response.getStatusCode());
         }
-
-        return null;
+        return result;
     }
     
-    private BigDecimal extractPrice(JsonNode priceNode, BigDecimal faceValue) {
+    private static boolean isRecent(JsonNode timeNode, Instant notBefore) {
+        try {
+            return !Instant.parse(timeNode.asText()).isBefore(notBefore);
+        } catch (DateTimeParseException e) {
+            // Без времени сделки цена не может считаться текущей
+            return false;
+        }
+    }
+
+    static BigDecimal extractPrice(JsonNode priceNode, BigDecimal faceValue) {
+        BigDecimal totalPercent = extractPercent(priceNode);
+        return totalPercent != null ? toAbsolutePrice(totalPercent, faceValue) : null;
+    }
+
+    /**
+     * T-Bank возвращает цену облигации в процентах от номинала: units + nano / 10^9
+     */
+    static BigDecimal extractPercent(JsonNode priceNode) {
         String units = priceNode.path("units").asText();
         String nano = priceNode.path("nano").asText();
 
         if (!units.isEmpty() && !nano.isEmpty()) {
-            // T-Bank возвращает цену в процентах от номинала
             BigDecimal pricePercent = new BigDecimal(units);
             BigDecimal nanoDecimal = new BigDecimal(nano).divide(BigDecimal.valueOf(1_000_000_000), 8, RoundingMode.HALF_UP);
-            BigDecimal totalPercent = pricePercent.add(nanoDecimal);
-            
-            // Конвертируем проценты в абсолютную цену
-            return totalPercent.multiply(faceValue).divide(BigDecimal.valueOf(100), 8, RoundingMode.HALF_UP);
+            return pricePercent.add(nanoDecimal);
         }
         
         return null;
     }
 
-
-    private static class RateLimitService {
-        private long lastRequestTime = 0;
-        private static final long REQUEST_INTERVAL = 60000 / 300; // 300 requests per minute
-        
-        public synchronized void waitForRateLimit() {
-            long currentTime = System.currentTimeMillis();
-            long timeSinceLastRequest = currentTime - lastRequestTime;
-            
-            if (timeSinceLastRequest < REQUEST_INTERVAL) {
-                try {
-                    Thread.sleep(REQUEST_INTERVAL - timeSinceLastRequest);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            
-            lastRequestTime = System.currentTimeMillis();
-        }
+    /**
+     * Конвертирует проценты от номинала в абсолютную цену
+     */
+    static BigDecimal toAbsolutePrice(BigDecimal percent, BigDecimal faceValue) {
+        return percent.multiply(faceValue).divide(BigDecimal.valueOf(100), 8, RoundingMode.HALF_UP);
     }
 
+
     @Transactional
     public void saveTBankPrice(TBankPrice tBankPrice) {
         tBankPriceRepository.saveOrUpdate(tBankPrice);
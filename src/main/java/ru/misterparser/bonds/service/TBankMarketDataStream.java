@@ -0,0 +1,255 @@
+package ru.misterparser.bonds.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.TBankConfig;
+import ru.misterparser.bonds.model.TBankPrice;
+import ru.misterparser.bonds.repository.TBankBondRepository;
+import ru.misterparser.bonds.repository.TBankBondRepository.TBankBondWithFaceValue;
+import ru.misterparser.bonds.repository.TBankPriceRepository;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Потоковый режим рыночных данных T-Bank (sources.bonds.tbank.stream.enabled).
+ * Подписывается на стаканы глубины 1 всех облигаций с номиналом (по max-instruments-per-stream инструментов
+ * на поток) и держит лучшие bid/ask в буфере: на каждый FIGI хранится только последнее значение.
+ * Раз в flush-interval-ms буфер записывается в tbank_prices одним batch-запросом. ISIN облигаций, цены которых
+ * действительно изменились, накапливаются и пересчитываются раз в recalc-interval-seconds: каждый пересчет
+ * публикует новое поколение расчета, поэтому он не выполняется на каждую запись цен.
+ * Пока поток подключен, периодический опрос цен не выполняется.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TBankMarketDataStream {
+
+    private static final String STREAM_METHOD = "MarketDataStreamService/MarketDataServerSideStream";
+
+    private final TBankConfig tBankConfig;
+    private final TBankApiClient tBankApiClient;
+    private final TBankBondRepository tBankBondRepository;
+    private final TBankPriceRepository tBankPriceRepository;
+    private final CalculationService calculationService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, TBankPrice> pendingPrices = new ConcurrentHashMap<>();
+    private final Set<String> changedIsins = ConcurrentHashMap.newKeySet();
+    private final List<Stream<String>> openStreams = new CopyOnWriteArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicInteger connectedStreams = new AtomicInteger();
+    private volatile Map<String, TBankBondWithFaceValue> bondsByFigi = Map.of();
+    private volatile boolean running;
+    private ScheduledExecutorService executor;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        TBankConfig.StreamConfig config = tBankConfig.getStream();
+        if (!tBankConfig.isEnabled() || !config.isEnabled()) {
+            return;
+        }
+        if (tBankConfig.getToken() == null || tBankConfig.getToken().trim().isEmpty()) {
+            log.error("T-Bank token is not configured, market data stream is not started");
+            return;
+        }
+
+        bondsByFigi = tBankBondRepository.findAllWithFaceValues().stream()
+                .filter(bond -> bond.getFaceValue() != null)
+                .collect(Collectors.toMap(TBankBondWithFaceValue::getFigi, bond -> bond, (first, second) -> first));
+        List<String> figis = new ArrayList<>(bondsByFigi.keySet());
+        int perStream = Math.max(1, config.getMaxInstrumentsPerStream());
+        int streams = (figis.size() + perStream - 1) / perStream;
+
+        running = true;
+        executor = Executors.newScheduledThreadPool(streams + 2, runnable -> {
+            Thread thread = new Thread(runnable, "tbank-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int from = 0; from < figis.size(); from += perStream) {
+            List<String> chunk = figis.subList(from, Math.min(figis.size(), from + perStream));
+            executor.execute(() -> readStream(chunk));
+        }
+        long flushInterval = Math.max(1, config.getFlushIntervalMs());
+        executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        long recalcInterval = Math.max(1, config.getRecalcIntervalSeconds());
+        executor.scheduleWithFixedDelay(this::recalculate, recalcInterval, recalcInterval, TimeUnit.SECONDS);
+        log.info("T-Bank market data stream started: {} instruments in {} streams", figis.size(), streams);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        openStreams.forEach(Stream::close);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Поток подключен - периодический опрос цен не нужен
+     */
+    public boolean isConnected() {
+        return connectedStreams.get() > 0;
+    }
+
+    public String getStatistics() {
+        return String.format("T-Bank stream: %s, %d connected streams, %d instruments, %d updates received, %d prices saved, "
+                        + "%d pending, %d bonds awaiting recalculation",
+                running ? "running" : "stopped", connectedStreams.get(), bondsByFigi.size(), received.get(), saved.get(),
+                pendingPrices.size(), changedIsins.size());
+    }
+
+    /**
+     * Читает поток и переподключается после обрыва
+     */
+    private void readStream(List<String> figis) {
+        Map<String, Object> request = Map.of("subscribeOrderBookRequest", Map.of(
+                "subscriptionAction", "SUBSCRIPTION_ACTION_SUBSCRIBE",
+                "instruments", figis.stream()
+                        .map(figi -> Map.of("figi", figi, "depth", 1))
+                        .collect(Collectors.toList())));
+        long reconnectDelay = Math.max(1, tBankConfig.getStream().getReconnectDelaySeconds());
+        while (running) {
+            try (Stream<String> lines = tBankApiClient.openStream(tBankConfig.getStream().getUrl(), STREAM_METHOD, request)) {
+                openStreams.add(lines);
+                connectedStreams.incrementAndGet();
+                try {
+                    log.info("T-Bank market data stream subscribed to {} instruments", figis.size());
+                    lines.forEach(this::onMessage);
+                    log.warn("T-Bank market data stream closed by server");
+                } finally {
+                    connectedStreams.decrementAndGet();
+                    openStreams.remove(lines);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("T-Bank market data stream error: {}", e.getMessage());
+            }
+            try {
+                TimeUnit.SECONDS.sleep(reconnectDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void onMessage(String line) {
+        if (line.isBlank()) {
+            return;
+        }
+        try {
+            JsonNode orderBook = objectMapper.readTree(line).path("result").path("orderbook");
+            if (orderBook.isMissingNode()) {
+                return;
+            }
+            TBankBondWithFaceValue bond = bondsByFigi.get(orderBook.path("figi").asText());
+            if (bond == null) {
+                return;
+            }
+            TBankPrice price = new TBankPrice();
+            price.setFigi(bond.getFigi());
+            price.setPriceAsk(bestPrice(orderBook.path("asks"), bond.getFaceValue()));
+            price.setPriceBid(bestPrice(orderBook.path("bids"), bond.getFaceValue()));
+            if (price.getPriceAsk() != null || price.getPriceBid() != null) {
+                received.incrementAndGet();
+                pendingPrices.put(bond.getFigi(), price);
+            }
+        } catch (Exception e) {
+            log.debug("Error parsing T-Bank stream message: {}", e.getMessage());
+        }
+    }
+
+    private static BigDecimal bestPrice(JsonNode levels, BigDecimal faceValue) {
+        return levels.isArray() && levels.size() > 0
+                ? TBankMarketDataService.extractPrice(levels.get(0).path("price"), faceValue)
+                : null;
+    }
+
+    /**
+     * Записывает накопленные цены и запоминает облигации с изменившимися ценами для пересчета
+     */
+    private void flush() {
+        if (pendingPrices.isEmpty()) {
+            return;
+        }
+        List<TBankPrice> prices = new ArrayList<>(pendingPrices.size());
+        for (String figi : new ArrayList<>(pendingPrices.keySet())) {
+            TBankPrice price = pendingPrices.remove(figi);
+            if (price != null) {
+                prices.add(price);
+            }
+        }
+        try {
+            List<String> changedFigis = tBankPriceRepository.saveAll(prices);
+            saved.addAndGet(changedFigis.size());
+            if (changedFigis.isEmpty()) {
+                return;
+            }
+            // Тикер облигации T-Bank совпадает с ISIN (см. связь tbank_bonds.ticker = moex_bonds.isin)
+            for (String figi : changedFigis) {
+                TBankBondWithFaceValue bond = bondsByFigi.get(figi);
+                if (bond != null) {
+                    changedIsins.add(bond.getTicker());
+                }
+            }
+            log.debug("T-Bank stream flush: {} prices, {} changed", prices.size(), changedFigis.size());
+        } catch (Exception e) {
+            log.error("Error saving T-Bank stream prices", e);
+            // Цены не потеряны: возвращаются в буфер, если за это время не пришли более новые
+            Map<String, TBankPrice> retry = new HashMap<>();
+            prices.forEach(price -> retry.put(price.getFigi(), price));
+            retry.forEach(pendingPrices::putIfAbsent);
+        }
+    }
+
+    /**
+     * Пересчитывает облигации, цены которых изменились с прошлого пересчета
+     */
+    private void recalculate() {
+        if (changedIsins.isEmpty()) {
+            return;
+        }
+        Set<String> isins = new LinkedHashSet<>();
+        for (String isin : new ArrayList<>(changedIsins)) {
+            if (changedIsins.remove(isin)) {
+                isins.add(isin);
+            }
+        }
+        try {
+            log.debug("T-Bank stream recalculation: {} bonds", isins.size());
+            calculationService.calculateChangedBonds(isins);
+        } catch (Exception e) {
+            log.error("Error recalculating bonds with changed T-Bank stream prices", e);
+            changedIsins.addAll(isins);
+        }
+    }
+}
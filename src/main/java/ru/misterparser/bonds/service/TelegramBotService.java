@@ -15,6 +15,7 @@ import ru.misterparser.bonds.model.Bond;
 import ru.misterparser.bonds.model.OfferSubscription;
 import ru.misterparser.bonds.repository.BondRepository;
 import ru.misterparser.bonds.repository.OfferSubscriptionRepository;
+import ru.misterparser.bonds.repository.TelegramOutboxRepository;
 import ru.misterparser.bonds.repository.TelegramUserRepository;
 import ru.misterparser.bonds.model.TelegramUser;
 
@@ -22,7 +23,10 @@ import javax.annotation.PostConstruct;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -31,6 +35,8 @@ public class TelegramBotService extends TelegramLongPollingBot {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
 
+    public static final String PARSE_MODE = "Markdown";
+
     @Value("${telegram.bot.token:}")
     private String botToken;
 
@@ -40,6 +46,8 @@ public class TelegramBotService extends TelegramLongPollingBot {
     private final OfferSubscriptionRepository subscriptionRepository;
     private final BondRepository bondRepository;
     private final TelegramUserRepository telegramUserRepository;
+    private final TelegramRateLimiter telegramRateLimiter;
+    private final TelegramOutboxRepository telegramOutboxRepository;
 
     @PostConstruct
     public void init() {
@@ -166,10 +174,10 @@ public class TelegramBotService extends TelegramLongPollingBot {
         StringBuilder message = new StringBuilder();
         message.append("📋 *Ваши подписки на оферты* (").append(subscriptions.size()).append("):\n\n");
 
+        Map<String, Bond> bondsByIsin = findBondsByIsin(subscriptions);
         for (OfferSubscription subscription : subscriptions) {
-            Optional<Bond> bondOpt = bondRepository.findByIsin(subscription.getIsin());
-            if (bondOpt.isPresent()) {
-                Bond bond = bondOpt.get();
+            Bond bond = bondsByIsin.get(subscription.getIsin());
+            if (bond != null) {
                 message.append("🔹 ").append(subscription.getIsin());
                 if (bond.getTicker() != null) {
                     message.append(" (").append(bond.getTicker()).append(")");
@@ -191,6 +199,17 @@ public class TelegramBotService extends TelegramLongPollingBot {
         sendMessage(chatId, message.toString());
     }
 
+    /**
+     * Облигации подписок одним запросом, по ISIN
+     */
+    private Map<String, Bond> findBondsByIsin(List<OfferSubscription> subscriptions) {
+        Set<String> isins = subscriptions.stream()
+            .map(OfferSubscription::getIsin)
+            .collect(Collectors.toSet());
+        return bondRepository.findByIsins(isins).stream()
+            .collect(Collectors.toMap(Bond::getIsin, bond -> bond, (first, second) -> first));
+    }
+
     private void handleClearCommand(Long chatId) {
         int removed = subscriptionRepository.removeAllSubscriptionsByUser(chatId);
         if (removed > 0) {
@@ -294,13 +313,15 @@ public class TelegramBotService extends TelegramLongPollingBot {
             List<OfferSubscription> subscriptions = subscriptionRepository.findSubscriptionsWithOffersInDays(14);
             
             // Фильтруем только для текущего пользователя
+            List<OfferSubscription> userSubscriptions = subscriptions.stream()
+                .filter(subscription -> subscription.getChatId().equals(chatId))
+                .collect(Collectors.toList());
+            Map<String, Bond> bondsByIsin = findBondsByIsin(userSubscriptions);
             List<Bond> userBonds = new ArrayList<>();
-            for (OfferSubscription subscription : subscriptions) {
-                if (subscription.getChatId().equals(chatId)) {
-                    Optional<Bond> bondOpt = bondRepository.findByIsin(subscription.getIsin());
-                    if (bondOpt.isPresent()) {
-                        userBonds.add(bondOpt.get());
-                    }
+            for (OfferSubscription subscription : userSubscriptions) {
+                Bond bond = bondsByIsin.get(subscription.getIsin());
+                if (bond != null) {
+                    userBonds.add(bond);
                 }
             }
             
@@ -357,28 +378,45 @@ public class TelegramBotService extends TelegramLongPollingBot {
     }
 
     /**
-     * Отправляет сообщение пользователю
+     * Отправляет ответ на команду сразу, если ограничения частоты Telegram это позволяют, иначе ставит его
+     * в очередь telegram_outbox. Поток обработки обновлений бота не ждет, поэтому частые команды в одном чате
+     * не задерживают ответы в другие чаты. Уведомления отправляются через очередь TelegramOutboxService.
      */
     public void sendMessage(Long chatId, String text) {
+        if (!telegramRateLimiter.tryAcquire(chatId)) {
+            log.debug("Ответ в чат {} отложен в очередь из-за ограничения частоты", chatId);
+            telegramOutboxRepository.enqueue(chatId, text, PARSE_MODE);
+            return;
+        }
         try {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId.toString());
-            message.setText(text);
-            message.setParseMode("Markdown");
-            execute(message);
+            deliver(chatId, text, PARSE_MODE);
         } catch (TelegramApiException e) {
             log.error("Ошибка отправки сообщения в чат {}: {}", chatId, e.getMessage());
         }
     }
 
     /**
-     * Отправляет уведомление о приближающихся офертах
+     * Отправляет сообщение без ограничений частоты и перехвата ошибок (для обработчиков очереди)
      */
-    public void sendOfferNotification(Long chatId, List<Bond> bonds) {
-        if (bonds.isEmpty()) {
-            return;
-        }
+    public void deliver(Long chatId, String text, String parseMode) throws TelegramApiException {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText(text);
+        message.setParseMode(parseMode);
+        execute(message);
+    }
 
+    /**
+     * Настроен ли токен бота
+     */
+    public boolean isConfigured() {
+        return botToken != null && !botToken.trim().isEmpty();
+    }
+
+    /**
+     * Текст уведомления о приближающихся офертах
+     */
+    public String buildOfferNotification(List<Bond> bonds) {
         StringBuilder message = new StringBuilder();
         message.append("🔔 *Уведомление о приближающихся офертах*\n\n");
         message.append("У ваших облигаций скоро наступают оферты:\n\n");
@@ -401,6 +439,6 @@ public class TelegramBotService extends TelegramLongPollingBot {
         }
 
         message.append("💡 Не забудьте принять решение по оферте до указанной даты!");
-        sendMessage(chatId, message.toString());
+        return message.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package ru.misterparser.bonds.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.misterparser.bonds.config.TelegramOutboxConfig;
+import ru.misterparser.bonds.model.TelegramOutboxMessage;
+import ru.misterparser.bonds.repository.TelegramOutboxRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Очередь исходящих уведомлений Telegram.
+ * Уведомления записываются в telegram_outbox в транзакции рассылки и сразу возвращают управление.
+ * Диспетчер забирает сообщения из таблицы, резервирует для каждого слот чата (не чаще одного сообщения
+ * в per-chat-interval-ms) и передает пулу обработчиков; перед отправкой обработчик берет токен общего
+ * ограничения бота. На 429 сообщение откладывается на retry_after, на прочие временные ошибки -
+ * с экспоненциальной задержкой.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelegramOutboxService {
+
+    private final TelegramOutboxRepository telegramOutboxRepository;
+    private final TelegramBotService telegramBotService;
+    private final TelegramRateLimiter telegramRateLimiter;
+    private final TelegramOutboxConfig config;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private ScheduledExecutorService workers;
+
+    @PostConstruct
+    public void init() {
+        workers = Executors.newScheduledThreadPool(Math.max(1, config.getWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "telegram-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        releaseStaleClaims();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Ставит сообщение в очередь; отправка - после фиксации текущей транзакции.
+     * Без токена бота сообщение не сохраняется: иначе очередь росла бы без ограничений
+     * и после настройки токена пользователи получили бы устаревшие уведомления.
+     */
+    public void enqueue(Long chatId, String text) {
+        if (!telegramBotService.isConfigured()) {
+            log.debug("Telegram бот не настроен, сообщение в чат {} не поставлено в очередь", chatId);
+            return;
+        }
+        telegramOutboxRepository.enqueue(chatId, text, TelegramBotService.PARSE_MODE);
+    }
+
+    /**
+     * Забирает из очереди сообщения, время отправки которых наступило
+     */
+    @Scheduled(fixedDelayString = "${telegram.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        if (!telegramBotService.isConfigured()) {
+            return;
+        }
+        int capacity = config.getBatchSize() - inFlight.get();
+        if (capacity <= 0) {
+            return;
+        }
+        List<TelegramOutboxMessage> messages = telegramOutboxRepository.claimDue(capacity, pendingExpiredBefore());
+        if (messages.isEmpty()) {
+            return;
+        }
+        log.debug("Telegram outbox: {} messages claimed", messages.size());
+        for (TelegramOutboxMessage message : messages) {
+            long delay = telegramRateLimiter.reserveChatSlot(message.getChatId());
+            inFlight.incrementAndGet();
+            workers.schedule(() -> send(message), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void send(TelegramOutboxMessage message) {
+        try {
+            telegramRateLimiter.acquireGlobal();
+            telegramBotService.deliver(message.getChatId(), message.getText(), message.getParseMode());
+            telegramOutboxRepository.markSent(message.getId());
+        } catch (TelegramApiRequestException e) {
+            handleRequestError(message, e);
+        } catch (TelegramApiException e) {
+            retryLater(message, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            telegramOutboxRepository.defer(message.getId(), LocalDateTime.now(), "interrupted");
+        } catch (Exception e) {
+            log.error("Ошибка отправки сообщения {} в чат {}", message.getId(), message.getChatId(), e);
+            retryLater(message, e.getMessage());
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void handleRequestError(TelegramOutboxMessage message, TelegramApiRequestException e) {
+        Integer errorCode = e.getErrorCode();
+        Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+        if (errorCode != null && errorCode == 429 && retryAfter != null) {
+            // Ограничение частоты Telegram: повтор через retry_after без учета как неудачной попытки
+            log.warn("Telegram 429 для чата {}, повтор через {} с", message.getChatId(), retryAfter);
+            telegramRateLimiter.deferChat(message.getChatId(), retryAfter);
+            telegramOutboxRepository.defer(message.getId(), LocalDateTime.now().plusSeconds(retryAfter),
+                    "429 retry_after=" + retryAfter);
+        } else if (errorCode != null && (errorCode == 400 || errorCode == 403)) {
+            // Чат не найден, бот заблокирован пользователем и т.п. - повтор не поможет
+            log.warn("Сообщение {} в чат {} не может быть доставлено: {}", message.getId(), message.getChatId(), e.getApiResponse());
+            telegramOutboxRepository.markFailed(message.getId(), errorCode + " " + e.getApiResponse());
+        } else {
+            retryLater(message, errorCode + " " + e.getApiResponse());
+        }
+    }
+
+    private void retryLater(TelegramOutboxMessage message, String error) {
+        if (message.getAttempts() >= config.getMaxAttempts()) {
+            log.error("Сообщение {} в чат {} не отправлено за {} попыток: {}",
+                    message.getId(), message.getChatId(), message.getAttempts(), error);
+            telegramOutboxRepository.markFailed(message.getId(), error);
+            return;
+        }
+        long backoff = Math.min((long) config.getBackoffInitialSeconds() << Math.min(message.getAttempts() - 1, 20),
+                config.getBackoffMaxSeconds());
+        log.warn("Ошибка отправки сообщения {} в чат {} (попытка {}), повтор через {} с: {}",
+                message.getId(), message.getChatId(), message.getAttempts(), backoff, error);
+        telegramOutboxRepository.reschedule(message.getId(), LocalDateTime.now().plusSeconds(backoff), error);
+    }
+
+    /**
+     * Возвращает в очередь сообщения, выданные обработчику дольше claim-timeout-seconds назад:
+     * экземпляр, который их забрал, остановился до отправки. Сообщения, выданные недавно,
+     * остаются за забравшим их экземпляром, поэтому очередь можно разбирать несколькими экземплярами.
+     */
+    @Scheduled(fixedDelayString = "#{@telegramOutboxConfig.claimTimeoutSeconds * 1000}",
+            initialDelayString = "#{@telegramOutboxConfig.claimTimeoutSeconds * 1000}")
+    public void releaseStaleClaims() {
+        int released = telegramOutboxRepository.releaseClaimedBefore(
+                LocalDateTime.now().minusSeconds(config.getClaimTimeoutSeconds()));
+        if (released > 0) {
+            log.info("Возвращено в очередь {} сообщений Telegram, не отправленных за {} с", released,
+                    config.getClaimTimeoutSeconds());
+        }
+    }
+
+    /**
+     * Удаляет отправленные сообщения старше sent-retention-days, не отправленные за pending-ttl-hours
+     * и устаревшие слоты чатов
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    public void cleanup() {
+        int deleted = telegramOutboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(config.getSentRetentionDays()));
+        int expired = telegramOutboxRepository.deletePendingBefore(pendingExpiredBefore());
+        telegramRateLimiter.evictExpiredSlots();
+        log.info("Telegram outbox cleanup: {} sent messages deleted, {} expired pending messages deleted", deleted, expired);
+    }
+
+    /**
+     * Сообщения, созданные раньше этого времени, устарели и не отправляются
+     */
+    private LocalDateTime pendingExpiredBefore() {
+        return LocalDateTime.now().minusHours(config.getPendingTtlHours());
+    }
+
+    /**
+     * Состояние очереди
+     */
+    public String getStatistics() {
+        return String.format("Telegram outbox: %s, in flight %d", telegramOutboxRepository.countByStatus(), inFlight.get());
+    }
+}
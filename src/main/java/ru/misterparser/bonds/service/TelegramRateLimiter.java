@@ -0,0 +1,83 @@
+package ru.misterparser.bonds.service;
+
+import org.springframework.stereotype.Component;
+import ru.misterparser.bonds.config.TelegramOutboxConfig;
+import ru.misterparser.bonds.util.TokenBucket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничения частоты отправки в Telegram: общий token bucket на бота и интервал между сообщениями в один чат.
+ * Общий для очереди уведомлений и ответов бота на команды.
+ */
+@Component
+public class TelegramRateLimiter {
+
+    private final TokenBucket globalBucket;
+    private final long perChatIntervalNanos;
+    private final Map<Long, Long> nextChatSlot = new ConcurrentHashMap<>();
+
+    public TelegramRateLimiter(TelegramOutboxConfig config) {
+        this.globalBucket = new TokenBucket(config.getGlobalRatePerSecond(), Math.max(1, config.getGlobalRatePerSecond()));
+        this.perChatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getPerChatIntervalMs());
+    }
+
+    /**
+     * Резервирует ближайший свободный слот отправки в чат
+     *
+     * @return через сколько наносекунд можно отправлять
+     */
+    public long reserveChatSlot(Long chatId) {
+        long now = System.nanoTime();
+        long[] wait = new long[1];
+        nextChatSlot.compute(chatId, (id, next) -> {
+            long slot = next == null || next - now < 0 ? now : next;
+            wait[0] = slot - now;
+            return slot + perChatIntervalNanos;
+        });
+        return wait[0];
+    }
+
+    /**
+     * Откладывает следующие отправки в чат (ответ 429 с retry_after)
+     */
+    public void deferChat(Long chatId, long seconds) {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        nextChatSlot.merge(chatId, until, (current, deferred) -> current - deferred > 0 ? current : deferred);
+    }
+
+    /**
+     * Ждет общий токен бота
+     */
+    public void acquireGlobal() throws InterruptedException {
+        globalBucket.acquire();
+    }
+
+    /**
+     * Забирает слот чата и общий токен без ожидания, если оба свободны прямо сейчас
+     *
+     * @return false, если отправку нужно отложить
+     */
+    public boolean tryAcquire(Long chatId) {
+        long now = System.nanoTime();
+        boolean[] acquired = new boolean[1];
+        nextChatSlot.compute(chatId, (id, next) -> {
+            if (next != null && next - now > 0 || !globalBucket.tryAcquire()) {
+                return next;
+            }
+            acquired[0] = true;
+            return now + perChatIntervalNanos;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Удаляет слоты чатов, которые уже прошли
+     */
+    public void evictExpiredSlots() {
+        long now = System.nanoTime();
+        nextChatSlot.values().removeIf(next -> next - now < 0);
+    }
+}
@@ -0,0 +1,265 @@
+package ru.misterparser.bonds.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.misterparser.bonds.config.TBankConfig;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Торговый календарь биржи по расписанию InstrumentsService/TradingSchedules API T-Bank.
+ * Учитывает праздники, торговые выходные дни и вечерние сессии. Расписание на days-ahead дней вперед
+ * обновляется по refresh-cron и сохраняется на диск, чтобы после перезапуска не запрашивать его заново.
+ * Для дней, которых нет в расписании (API недоступно, нет токена), используется встроенное расписание
+ * из fallback-resource: будние дни и фиксированные праздники.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TradingCalendarService {
+
+    private static final String TRADING_SCHEDULES = "InstrumentsService/TradingSchedules";
+    private static final String CACHE_FILE = "trading-schedules.json";
+    /** Отметки времени раньше этой даты в ответе API означают отсутствие значения */
+    private static final Instant NO_TIME = Instant.parse("2000-01-01T00:00:00Z");
+
+    private final TBankConfig tBankConfig;
+    private final TBankApiClient tBankApiClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile Map<LocalDate, TradingDay> days = Map.of();
+    private Fallback fallback;
+
+    @Value
+    private static class Session {
+        Instant start;
+        Instant end;
+
+        boolean contains(Instant instant) {
+            return !instant.isBefore(start) && instant.isBefore(end);
+        }
+    }
+
+    @Value
+    private static class TradingDay {
+        boolean tradingDay;
+        List<Session> sessions;
+    }
+
+    /**
+     * Встроенное расписание: торговые дни недели, сессии в часовом поясе биржи и праздники
+     */
+    @Value
+    private static class Fallback {
+        ZoneId zone;
+        Set<DayOfWeek> tradingDays;
+        List<LocalTime[]> sessions;
+        Set<MonthDay> holidays;
+
+        boolean isTradingDay(LocalDate date) {
+            return tradingDays.contains(date.getDayOfWeek()) && !holidays.contains(MonthDay.from(date));
+        }
+
+        boolean isTrading(ZonedDateTime time) {
+            if (!isTradingDay(time.toLocalDate())) {
+                return false;
+            }
+            LocalTime localTime = time.toLocalTime();
+            return sessions.stream().anyMatch(session -> !localTime.isBefore(session[0]) && localTime.isBefore(session[1]));
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        fallback = loadFallback();
+        loadCache();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!days.containsKey(today())) {
+            refresh();
+        }
+    }
+
+    /**
+     * Запрашивает расписание на days-ahead дней вперед и сохраняет его в дисковый кэш
+     */
+    @Scheduled(cron = "#{@tBankConfig.calendar.refreshCron}")
+    public void refresh() {
+        if (!tBankConfig.isEnabled() || tBankConfig.getToken() == null || tBankConfig.getToken().trim().isEmpty()) {
+            log.info("T-Bank API is not configured, trading calendar uses the bundled schedule");
+            return;
+        }
+        TBankConfig.CalendarConfig config = tBankConfig.getCalendar();
+        LocalDate from = today();
+        try {
+            JsonNode response = tBankApiClient.post(TRADING_SCHEDULES, Map.of(
+                    "exchange", config.getExchange(),
+                    "from", from.atStartOfDay(fallback.getZone()).toInstant().toString(),
+                    "to", from.plusDays(config.getDaysAhead()).atStartOfDay(fallback.getZone()).toInstant().toString()));
+            Map<LocalDate, TradingDay> loaded = parse(response);
+            if (loaded.isEmpty()) {
+                log.warn("T-Bank TradingSchedules returned no days for exchange {}", config.getExchange());
+                return;
+            }
+            days = loaded;
+            Path cacheDir = Paths.get(config.getCachePath());
+            Files.createDirectories(cacheDir);
+            objectMapper.writeValue(cacheDir.resolve(CACHE_FILE).toFile(), response);
+            log.info("Trading calendar updated: {} days, {} trading", loaded.size(),
+                    loaded.values().stream().filter(TradingDay::isTradingDay).count());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error updating trading calendar, keeping the previous schedule", e);
+        }
+    }
+
+    /**
+     * Идет ли сейчас торговая сессия (основная, вечерняя или торги выходного дня)
+     */
+    public boolean isTradingNow() {
+        Instant now = Instant.now();
+        ZonedDateTime zonedNow = now.atZone(fallback.getZone());
+        LocalDate today = zonedNow.toLocalDate();
+        TradingDay day = days.get(today);
+        if (day == null) {
+            return fallback.isTrading(zonedNow);
+        }
+        // Сессия предыдущего дня может закончиться после полуночи
+        TradingDay previous = days.get(today.minusDays(1));
+        return day.getSessions().stream().anyMatch(session -> session.contains(now))
+                || previous != null && previous.getSessions().stream().anyMatch(session -> session.contains(now));
+    }
+
+    /**
+     * Торговый ли день (по дате биржи)
+     */
+    public boolean isTradingDay(LocalDate date) {
+        TradingDay day = days.get(date);
+        return day != null ? day.isTradingDay() : fallback.isTradingDay(date);
+    }
+
+    public boolean isTradingDay() {
+        return isTradingDay(today());
+    }
+
+    public String getStatus() {
+        Map<LocalDate, TradingDay> current = days;
+        return String.format("Trading calendar: %d days from API (%s - %s), trading day today %s, session now %s",
+                current.size(),
+                current.keySet().stream().min(LocalDate::compareTo).orElse(null),
+                current.keySet().stream().max(LocalDate::compareTo).orElse(null),
+                isTradingDay(), isTradingNow());
+    }
+
+    private LocalDate today() {
+        return LocalDate.now(fallback.getZone());
+    }
+
+    private void loadCache() {
+        Path cacheFile = Paths.get(tBankConfig.getCalendar().getCachePath(), CACHE_FILE);
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try {
+            days = parse(objectMapper.readTree(cacheFile.toFile()));
+            log.info("Trading calendar loaded from cache: {} days", days.size());
+        } catch (Exception e) {
+            log.warn("Error reading trading calendar cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Дни расписания из ответа TradingSchedules
+     */
+    private Map<LocalDate, TradingDay> parse(JsonNode response) {
+        String exchange = tBankConfig.getCalendar().getExchange();
+        Map<LocalDate, TradingDay> result = new HashMap<>();
+        for (JsonNode exchangeNode : response.path("exchanges")) {
+            if (!exchange.equalsIgnoreCase(exchangeNode.path("exchange").asText())) {
+                continue;
+            }
+            for (JsonNode dayNode : exchangeNode.path("days")) {
+                Instant date = parseInstant(dayNode.path("date"));
+                if (date == null) {
+                    continue;
+                }
+                boolean tradingDay = dayNode.path("isTradingDay").asBoolean(false);
+                List<Session> sessions = new ArrayList<>();
+                if (tradingDay) {
+                    addSession(sessions, dayNode.path("startTime"), dayNode.path("endTime"));
+                    addSession(sessions, dayNode.path("eveningStartTime"), dayNode.path("eveningEndTime"));
+                }
+                // Дата дня приходит как полночь UTC
+                result.put(LocalDate.ofInstant(date, ZoneId.of("UTC")), new TradingDay(tradingDay, sessions));
+            }
+        }
+        return result;
+    }
+
+    private static void addSession(List<Session> sessions, JsonNode startNode, JsonNode endNode) {
+        Instant start = parseInstant(startNode);
+        Instant end = parseInstant(endNode);
+        if (start != null && end != null && start.isAfter(NO_TIME) && end.isAfter(start)) {
+            sessions.add(new Session(start, end));
+        }
+    }
+
+    private static Instant parseInstant(JsonNode node) {
+        if (node.isMissingNode() || node.isNull() || node.asText().isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(node.asText());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private Fallback loadFallback() throws IOException {
+        String resource = tBankConfig.getCalendar().getFallbackResource();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(resource)) {
+            if (input == null) {
+                throw new IOException("Trading calendar fallback resource not found: " + resource);
+            }
+            JsonNode root = objectMapper.readTree(input);
+            Set<DayOfWeek> tradingDays = EnumSet.noneOf(DayOfWeek.class);
+            root.path("tradingDays").forEach(day -> tradingDays.add(DayOfWeek.valueOf(day.asText())));
+            List<LocalTime[]> sessions = new ArrayList<>();
+            root.path("sessions").forEach(session -> sessions.add(new LocalTime[]{
+                    LocalTime.parse(session.path("start").asText()), LocalTime.parse(session.path("end").asText())}));
+            Set<MonthDay> holidays = new HashSet<>();
+            root.path("holidays").forEach(holiday -> holidays.add(MonthDay.parse("--" + holiday.asText())));
+            return new Fallback(ZoneId.of(root.path("zone").asText()), tradingDays, sessions, holidays);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import ru.misterparser.bonds.model.UserFilterSettings;
 import ru.misterparser.bonds.repository.UserFilterSettingsRepository;
 
 import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -117,6 +118,77 @@ public class UserFilterSettingsService {
         saveCurrentUserSettings(settings);
     }
 
+    /**
+     * Параметры фильтрации страницы топа по настройкам пользователя
+     */
+    public static BondFilteringService.FilterParams toFilterParams(UserFilterSettings settings) {
+        return toFilterParams(settings.getLimit() != null ? settings.getLimit() : 50,
+                settings.getWeeksToMaturity(), Boolean.TRUE.equals(settings.getShowOffer()), settings.getSearchText(),
+                settings.getFeePercent() != null ? settings.getFeePercent() : 0.30,
+                settings.getYieldRange(), settings.getSelectedRatingsList());
+    }
+
+    /**
+     * Параметры фильтрации страницы топа; диапазоны weeksToMaturity и yieldRange задаются строкой "min-max" или "max"
+     */
+    public static BondFilteringService.FilterParams toFilterParams(int limit, String weeksToMaturity, boolean showOffer,
+                                                                   String searchText, double feePercent, String yieldRange,
+                                                                   List<String> selectedRatings) {
+        int[] weeks = parseWeeksToMaturity(weeksToMaturity);
+        double[] yields = parseYieldRange(yieldRange);
+
+        BondFilteringService.FilterParams params = new BondFilteringService.FilterParams();
+        params.setMinWeeksToMaturity(weeks[0]);
+        params.setMaxWeeksToMaturity(weeks[1]);
+        params.setMinYield(BigDecimal.valueOf(yields[0]));
+        params.setMaxYield(BigDecimal.valueOf(yields[1]));
+        params.setIncludeOffer(showOffer);
+        params.setSearchText(searchText);
+        params.setCustomFeePercent(BigDecimal.valueOf(feePercent));
+        params.setLimit(limit);
+        params.setSelectedRatings(selectedRatings);
+        return params;
+    }
+
+    /**
+     * Срок до погашения в неделях: "min-max" или "max"; при ошибке - 0-26
+     */
+    static int[] parseWeeksToMaturity(String weeksToMaturity) {
+        if (weeksToMaturity == null) {
+            return new int[]{0, 26};
+        }
+        try {
+            if (weeksToMaturity.contains("-")) {
+                String[] parts = weeksToMaturity.split("-", 2);
+                return new int[]{Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+            }
+            return new int[]{0, Integer.parseInt(weeksToMaturity.trim())};
+        } catch (NumberFormatException e) {
+            return new int[]{0, 26};
+        }
+    }
+
+    /**
+     * Диапазон доходности: "min-max" (max больше min) или "max" (больше 0); при ошибке - 0-50
+     */
+    static double[] parseYieldRange(String yieldRange) {
+        if (yieldRange == null) {
+            return new double[]{0, 50};
+        }
+        try {
+            if (yieldRange.contains("-")) {
+                String[] parts = yieldRange.split("-", 2);
+                double minYield = Double.parseDouble(parts[0].trim());
+                double maxYield = Double.parseDouble(parts[1].trim());
+                return maxYield > minYield ? new double[]{minYield, maxYield} : new double[]{0, 50};
+            }
+            double maxYield = Double.parseDouble(yieldRange.trim());
+            return new double[]{0, maxYield > 0 ? maxYield : 50};
+        } catch (NumberFormatException e) {
+            return new double[]{0, 50};
+        }
+    }
+
     /**
      * Получить настройки по умолчанию
      */
@@ -15,8 +15,10 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +28,7 @@ public class UserOrderService {
 
     private final UserOrderRepository userOrderRepository;
     private final BondRepository bondRepository;
+    private final BondUniverseCache bondUniverseCache;
     private final TelegramAuthService telegramAuthService;
     private final CalculationService calculationService;
 
@@ -40,8 +43,8 @@ public class UserOrderService {
 
         order.setTelegramUserId(currentUser.getId());
         
-        // Получаем данные облигации из БД
-        Optional<Bond> bondOpt = bondRepository.findByIsin(order.getIsin());
+        // Получаем данные облигации из снимка (облигации без доходности - из БД)
+        Optional<Bond> bondOpt = findBond(order.getIsin());
         if (bondOpt.isEmpty()) {
             throw new IllegalArgumentException("Облигация с ISIN " + order.getIsin() + " не найдена");
         }
@@ -97,7 +100,7 @@ public class UserOrderService {
         }
 
         // Пересчитываем НКД если изменилась дата
-        Optional<Bond> bondOpt = bondRepository.findByIsin(existingOrder.getIsin());
+        Optional<Bond> bondOpt = findBond(existingOrder.getIsin());
         if (bondOpt.isPresent()) {
             calculateNkd(existingOrder, bondOpt.get());
         }
@@ -146,7 +149,22 @@ public class UserOrderService {
      * Получает список доступных облигаций для автодополнения
      */
     public List<Bond> getAvailableBonds() {
-        return bondRepository.findAllBondsForFiltering();
+        return bondUniverseCache.getBonds();
+    }
+
+    /**
+     * Поиск облигаций для автодополнения по ISIN, тикеру и названию с ранжированием по релевантности
+     */
+    public List<Bond> searchBonds(String search, int limit) {
+        BondUniverseCache.BondUniverse universe = bondUniverseCache.getUniverse();
+        return Arrays.stream(universe.getSearch().search(search, limit))
+                .mapToObj(position -> universe.getBonds().get(position))
+                .collect(Collectors.toList());
+    }
+
+    private Optional<Bond> findBond(String isin) {
+        Optional<Bond> bond = bondUniverseCache.findByIsin(isin);
+        return bond.isPresent() ? bond : bondRepository.findByIsin(isin);
     }
 
     /**
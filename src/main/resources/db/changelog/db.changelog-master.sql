@@ -487,3 +487,200 @@ CREATE UNIQUE INDEX idx_tbank_figi ON tbank_prices (figi);
 --changeset bonds:30
 -- Добавляем поле use_offer_date для выбора к какой дате считать показатели
 ALTER TABLE user_orders ADD COLUMN use_offer_date BOOLEAN DEFAULT FALSE;
+
+
+--changeset bonds:31
+-- Коэффициенты чувствительности к комиссии: число дней до погашения и до оферты на дату расчета.
+-- Вместе с costs и profit_net (без комиссии) позволяют получить доходность с любой комиссией без полного пересчета
+ALTER TABLE bonds_calc ADD COLUMN days_to_maturity INTEGER;
+ALTER TABLE bonds_calc ADD COLUMN days_to_offer INTEGER;
+
+DROP VIEW IF EXISTS bonds;
+
+CREATE VIEW bonds AS
+SELECT
+    -- Генерируем уникальный ID на основе ISIN
+    ('x' || substr(md5(mb.isin), 1, 8))::bit(32)::bigint as id,
+
+    -- Основные данные из moex_bonds
+    mb.isin,
+    COALESCE(tb.ticker, mb.isin) as ticker,
+    mb.short_name,
+    mb.coupon_value,
+    mb.maturity_date,
+    mb.face_value,
+    mb.coupon_frequency,
+    mb.coupon_length,
+    mb.coupon_days_passed,
+    mb.offer_date,
+
+    -- Данные из tbank_bonds
+    tb.figi,
+    tb.instrument_uid,
+    tb.asset_uid,
+    tb.brand_name,
+
+    -- Цены из tbank_prices (обновлено для новой схемы)
+    tp.price_ask,
+    tp.price_bid,
+
+    -- Рейтинг из dohod_ratings
+    dr.rating_value,
+    dr.rating_code,
+
+    -- Расчетные поля из bond_calculations
+    bc.coupon_daily,
+    bc.nkd,
+    bc.costs,
+    bc.coupon_redemption,
+    bc.profit,
+    bc.profit_net,
+    bc.annual_yield,
+    bc.coupon_offer,
+    bc.profit_offer,
+    bc.profit_net_offer,
+    bc.annual_yield_offer,
+    bc.days_to_maturity,
+    bc.days_to_offer,
+
+    -- Отдельные даты обновления исходных сущностей
+    mb.updated_at as moex_updated_at,
+    tb.updated_at as tbank_bonds_updated_at,
+    tp.updated_at as tbank_prices_updated_at,
+    dr.updated_at as dohod_ratings_updated_at,
+    bc.updated_at as bonds_calc_updated_at
+
+FROM moex_bonds mb
+LEFT JOIN tbank_bonds tb ON tb.ticker = mb.isin OR tb.figi = mb.isin
+LEFT JOIN tbank_prices tp ON tp.figi = tb.figi
+LEFT JOIN dohod_ratings dr ON dr.isin = mb.isin
+INNER JOIN bonds_calc bc ON bc.isin = mb.isin;
+
+
+--changeset bonds:32
+-- Поколения расчета: каждый прогон пишет строки bonds_calc в новое поколение,
+-- представление bonds показывает только текущее опубликованное поколение.
+-- Полное поколение содержит все облигации, инкрементальное - только пересчитанные;
+-- остальные берутся из предыдущих поколений начиная с базового (полного)
+CREATE TABLE calc_generation (
+    id BIGSERIAL PRIMARY KEY,
+    base_generation BIGINT,
+    bonds_count INTEGER,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    published_at TIMESTAMP
+);
+
+-- Указатель на текущее поколение и его базовое поколение (одна строка), переключается одним UPDATE
+CREATE TABLE calc_current_generation (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    generation BIGINT NOT NULL,
+    base_generation BIGINT NOT NULL
+);
+
+-- Существующие расчетные данные становятся полным поколением 0
+INSERT INTO calc_generation (id, base_generation, published_at) VALUES (0, 0, CURRENT_TIMESTAMP);
+INSERT INTO calc_current_generation (id, generation, base_generation) VALUES (1, 0, 0);
+
+-- Суррогатный SERIAL-ключ не нужен: строки пишутся в каждое поколение заново и исчерпали бы int4
+ALTER TABLE bonds_calc DROP COLUMN id;
+ALTER TABLE bonds_calc ADD COLUMN generation BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE bonds_calc DROP CONSTRAINT bonds_calc_isin_key;
+ALTER TABLE bonds_calc ADD CONSTRAINT pk_bonds_calc PRIMARY KEY (generation, isin);
+-- Поиск последней строки облигации в цепочке поколений
+CREATE INDEX idx_bonds_calc_isin_generation ON bonds_calc (isin, generation DESC);
+
+DROP VIEW IF EXISTS bonds;
+
+CREATE VIEW bonds AS
+SELECT
+    -- Генерируем уникальный ID на основе ISIN
+    ('x' || substr(md5(mb.isin), 1, 8))::bit(32)::bigint as id,
+
+    -- Основные данные из moex_bonds
+    mb.isin,
+    COALESCE(tb.ticker, mb.isin) as ticker,
+    mb.short_name,
+    mb.coupon_value,
+    mb.maturity_date,
+    mb.face_value,
+    mb.coupon_frequency,
+    mb.coupon_length,
+    mb.coupon_days_passed,
+    mb.offer_date,
+
+    -- Данные из tbank_bonds
+    tb.figi,
+    tb.instrument_uid,
+    tb.asset_uid,
+    tb.brand_name,
+
+    -- Цены из tbank_prices (обновлено для новой схемы)
+    tp.price_ask,
+    tp.price_bid,
+
+    -- Рейтинг из dohod_ratings
+    dr.rating_value,
+    dr.rating_code,
+
+    -- Расчетные поля из bond_calculations
+    bc.coupon_daily,
+    bc.nkd,
+    bc.costs,
+    bc.coupon_redemption,
+    bc.profit,
+    bc.profit_net,
+    bc.annual_yield,
+    bc.coupon_offer,
+    bc.profit_offer,
+    bc.profit_net_offer,
+    bc.annual_yield_offer,
+    bc.days_to_maturity,
+    bc.days_to_offer,
+    cg.generation as calc_generation,
+
+    -- Отдельные даты обновления исходных сущностей
+    mb.updated_at as moex_updated_at,
+    tb.updated_at as tbank_bonds_updated_at,
+    tp.updated_at as tbank_prices_updated_at,
+    dr.updated_at as dohod_ratings_updated_at,
+    bc.updated_at as bonds_calc_updated_at
+
+FROM moex_bonds mb
+LEFT JOIN tbank_bonds tb ON tb.ticker = mb.isin OR tb.figi = mb.isin
+LEFT JOIN tbank_prices tp ON tp.figi = tb.figi
+LEFT JOIN dohod_ratings dr ON dr.isin = mb.isin
+INNER JOIN calc_current_generation cg ON cg.id = 1
+-- Последняя строка облигации среди опубликованных поколений от базового до текущего
+INNER JOIN LATERAL (
+    SELECT b.*
+    FROM bonds_calc b
+    INNER JOIN calc_generation g ON g.id = b.generation AND g.published_at IS NOT NULL
+    WHERE b.isin = mb.isin AND b.generation BETWEEN cg.base_generation AND cg.generation
+    ORDER BY b.generation DESC
+    LIMIT 1
+) bc ON TRUE;
+
+
+--changeset bonds:33
+-- Очередь исходящих сообщений Telegram: уведомления записываются в транзакции рассылки
+-- и отправляются фоновыми обработчиками с ограничением частоты
+CREATE TABLE telegram_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    chat_id BIGINT NOT NULL,
+    text TEXT NOT NULL,
+    parse_mode VARCHAR(20),
+    status VARCHAR(20) DEFAULT 'PENDING' NOT NULL,
+    attempts INTEGER DEFAULT 0 NOT NULL,
+    next_attempt_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    last_error TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    sent_at TIMESTAMP
+);
+
+CREATE INDEX idx_telegram_outbox_pending ON telegram_outbox(next_attempt_at, id) WHERE status = 'PENDING';
+
+
+--changeset bonds:34
+-- Время выдачи сообщения обработчику: после перезапуска в очередь возвращаются только сообщения,
+-- выданные дольше claim-timeout-seconds назад, чтобы не перехватывать сообщения других экземпляров
+ALTER TABLE telegram_outbox ADD COLUMN claimed_at TIMESTAMP;
@@ -0,0 +1,305 @@
+package ru.misterparser.bonds.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.misterparser.bonds.benchmark.SyntheticBonds;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.config.ScreenerConfig;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.repository.BondRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сверка скринера по колоночному индексу (битовые карты, упакованные ключи сортировки, выбор первых N)
+ * с исходной реализацией: filterBond и компаратор, перенесенные сюда без изменений.
+ * Набор облигаций - синтетический из docs/rates.csv, дополненный граничными случаями: доходности около
+ * и выше 50%, без доходности, прошедшие оферты, облигации без рейтинга.
+ */
+class BondFilteringEquivalenceTest {
+
+    private static final int SIZE = 3000;
+
+    private static final Integer[][] WEEK_RANGES = {
+            {null, null}, {0, 520}, {0, 0}, {4, 26}, {26, 104}, {52, 52}, {100, 520}, {-3, 8}};
+    private static final String[][] YIELD_RANGES = {
+            {null, null}, {"10", null}, {null, "60"}, {"15", "55"}, {"49.5", "80"}, {"50", "50"}, {"55", "100"}};
+    private static final String[] SEARCH_TEXTS = {null, " ", "1", "офз", " Sy0000002 "};
+    private static final List<List<String>> RATINGS = Arrays.asList(
+            null, List.of(), List.of("ruAAA"), List.of("ruA", "ruBBB-", "ruB"), List.of("unknown"));
+    private static final Integer[] LIMITS = {null, 10};
+
+    private static List<Bond> ratedBonds;
+    private static List<Bond> mixedBonds;
+    private static CalculationService calculationService;
+    private static BondFilteringService ratedService;
+    private static BondFilteringService mixedService;
+
+    @BeforeAll
+    static void setUp() {
+        SyntheticBonds.quietLogging();
+        CalcConfig calcConfig = SyntheticBonds.calcConfig(CalcConfig.Kernel.BIGDECIMAL, 1);
+        calculationService = SyntheticBonds.calculationService(calcConfig,
+                SyntheticBonds.stubDataRepository(List.of()), SyntheticBonds.capturingCalculationRepository(null));
+
+        ratedBonds = SyntheticBonds.calculatedUniverse(SIZE);
+        addEdgeCases(ratedBonds, false);
+        ratedService = filteringService(ratedBonds, calcConfig);
+
+        mixedBonds = SyntheticBonds.calculatedUniverse(SIZE);
+        addEdgeCases(mixedBonds, true);
+        mixedService = filteringService(mixedBonds, calcConfig);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        calculationService.shutdownCalculationPool();
+    }
+
+    /**
+     * Все облигации с рейтингом: исходный компаратор задает полный порядок, результаты должны совпасть
+     * вплоть до порядка
+     */
+    @Test
+    void matchesOriginalFilterAndOrder() {
+        int checked = 0;
+        int nonEmpty = 0;
+        for (BondFilteringService.FilterParams params : allParams()) {
+            List<String> expected = isins(referenceFilter(ratedBonds, params, originalComparator(isIncludeOffer(params))));
+            List<String> actual = isins(ratedService.getFilteredAndSortedBonds(params));
+            assertEquals(expected, actual, () -> describe(params));
+            checked++;
+            nonEmpty += expected.isEmpty() ? 0 : 1;
+        }
+        assertTrue(nonEmpty > checked / 4, "too few non-empty results: " + nonEmpty + " of " + checked);
+    }
+
+    /**
+     * С облигациями без рейтинга исходный компаратор не транзитивен (без рейтинга сравнивается только доходность),
+     * поэтому порядок сверяется с зафиксированным правилом: без рейтинга - после облигаций с рейтингом
+     * той же целой части доходности. Состав результата без лимита должен совпадать с исходным фильтром.
+     */
+    @Test
+    void matchesOriginalFilterWithUnratedBonds() {
+        for (BondFilteringService.FilterParams params : allParams()) {
+            boolean includeOffer = isIncludeOffer(params);
+            List<String> actual = isins(mixedService.getFilteredAndSortedBonds(params));
+            assertEquals(isins(referenceFilter(mixedBonds, params, unratedLastComparator(includeOffer))), actual,
+                    () -> describe(params));
+            if (params.getLimit() == null) {
+                assertEquals(referenceFilter(mixedBonds, params, null).stream().map(Bond::getIsin).sorted()
+                        .collect(Collectors.toList()), actual.stream().sorted().collect(Collectors.toList()),
+                        () -> describe(params));
+            }
+        }
+    }
+
+    /**
+     * Пакетная фильтрация (подписки) совпадает с фильтрацией каждого набора параметров по отдельности
+     */
+    @Test
+    void batchMatchesSingleEvaluation() {
+        Map<Integer, BondFilteringService.FilterParams> paramsByKey = new LinkedHashMap<>();
+        List<BondFilteringService.FilterParams> params = allParams();
+        for (int i = 0; i < params.size(); i += 7) {
+            paramsByKey.put(i, params.get(i));
+        }
+        Map<Integer, List<Bond>> batch = mixedService.getFilteredAndSortedBonds(paramsByKey);
+        paramsByKey.forEach((key, single) -> assertEquals(
+                isins(mixedService.getFilteredAndSortedBonds(single)), isins(batch.get(key)), () -> describe(single)));
+    }
+
+    private static BondFilteringService filteringService(List<Bond> bonds, CalcConfig calcConfig) {
+        BondRepository bondRepository = new BondRepository(null) {
+            @Override
+            public List<Bond> findAllBondsForFiltering() {
+                return bonds;
+            }
+        };
+        // Кэш результатов отключен: каждый запрос проходит через фильтрацию
+        ScreenerConfig screenerConfig = new ScreenerConfig();
+        screenerConfig.setCacheEnabled(false);
+        return new BondFilteringService(new BondUniverseCache(bondRepository, calculationService),
+                calculationService, new CustomFeeCalculator(calcConfig, calculationService),
+                new ScreenerResultCache(screenerConfig));
+    }
+
+    /**
+     * Граничные случаи поверх рассчитанного набора; при withUnrated у каждой пятой облигации нет рейтинга
+     */
+    private static void addEdgeCases(List<Bond> bonds, boolean withUnrated) {
+        LocalDate today = LocalDate.now();
+        String[] yields = {"50", "50.00000001", "49.99999999", "55", "120", "-3.5", "12", "12.00000000", "0"};
+        for (int i = 0; i < bonds.size(); i++) {
+            Bond bond = bonds.get(i);
+            if (i % 37 == 0) {
+                bond.setAnnualYield(new BigDecimal(yields[(i / 37) % yields.length]));
+            }
+            if (i % 53 == 0) {
+                bond.setAnnualYieldOffer(new BigDecimal(yields[(i / 53) % yields.length]));
+                bond.setOfferDate(today.plusDays(i % 400));
+            }
+            if (i % 59 == 0) {
+                // Прошедшая оферта: срок считается до погашения, доходность - по оферте (как в getEffectiveYield)
+                bond.setOfferDate(today.minusDays(1 + i % 30));
+                bond.setAnnualYieldOffer(new BigDecimal("21.5"));
+            }
+            if (i % 61 == 0) {
+                bond.setAnnualYield(null);
+            }
+            if (i % 67 == 0) {
+                bond.setMaturityDate(today.plusDays(i % 14));
+            }
+            if (withUnrated && i % 5 == 0) {
+                bond.setRatingValue(null);
+                bond.setRatingCode(null);
+            }
+        }
+    }
+
+    private static List<BondFilteringService.FilterParams> allParams() {
+        List<BondFilteringService.FilterParams> result = new ArrayList<>();
+        for (Integer[] weeks : WEEK_RANGES) {
+            for (boolean includeOffer : new boolean[]{false, true}) {
+                for (String[] yields : YIELD_RANGES) {
+                    for (String searchText : SEARCH_TEXTS) {
+                        for (List<String> ratings : RATINGS) {
+                            for (Integer limit : LIMITS) {
+                                BondFilteringService.FilterParams params = new BondFilteringService.FilterParams();
+                                params.setMinWeeksToMaturity(weeks[0]);
+                                params.setMaxWeeksToMaturity(weeks[1]);
+                                params.setIncludeOffer(includeOffer);
+                                params.setMinYield(yields[0] != null ? new BigDecimal(yields[0]) : null);
+                                params.setMaxYield(yields[1] != null ? new BigDecimal(yields[1]) : null);
+                                params.setSearchText(searchText);
+                                params.setSelectedRatings(ratings);
+                                params.setLimit(limit);
+                                result.add(params);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Исходная реализация: filterBond по каждой облигации, сортировка компаратором, затем лимит
+     */
+    private static List<Bond> referenceFilter(List<Bond> bonds, BondFilteringService.FilterParams params,
+                                              Comparator<Bond> comparator) {
+        List<Bond> filtered = bonds.stream()
+                .filter(bond -> filterBond(bond, params))
+                .collect(Collectors.toList());
+        if (comparator == null) {
+            return filtered;
+        }
+        return filtered.stream()
+                .sorted(comparator)
+                .limit(params.getLimit() != null ? params.getLimit() : Integer.MAX_VALUE)
+                .collect(Collectors.toList());
+    }
+
+    private static boolean filterBond(Bond bond, BondFilteringService.FilterParams params) {
+        boolean showOffer = isIncludeOffer(params);
+        BigDecimal yield = effectiveYield(bond, showOffer);
+        if (yield == null) return false;
+        if (params.getMinYield() != null && yield.compareTo(params.getMinYield()) < 0) {
+            return false;
+        }
+        if (params.getMaxYield() != null && yield.compareTo(params.getMaxYield()) > 0) {
+            return false;
+        }
+        // Ограничение по максимальной доходности 50%
+        if (yield.compareTo(BigDecimal.valueOf(50)) > 0) {
+            return false;
+        }
+        if (!filterByMaturity(bond, params, showOffer)) {
+            return false;
+        }
+        if (params.getSearchText() != null && !params.getSearchText().trim().isEmpty()) {
+            String searchPattern = params.getSearchText().trim().toLowerCase();
+            boolean matchFound = (bond.getTicker() != null && bond.getTicker().toLowerCase().contains(searchPattern)) ||
+                    (bond.getShortName() != null && bond.getShortName().toLowerCase().contains(searchPattern));
+            if (!matchFound) {
+                return false;
+            }
+        }
+        if (params.getSelectedRatings() != null && !params.getSelectedRatings().isEmpty()) {
+            String bondRating = bond.getRatingValue();
+            return bondRating != null && params.getSelectedRatings().contains(bondRating);
+        }
+        return true;
+    }
+
+    private static boolean filterByMaturity(Bond bond, BondFilteringService.FilterParams params, boolean showOffer) {
+        int minWeeks = params.getMinWeeksToMaturity() != null ? params.getMinWeeksToMaturity() : 0;
+        int maxWeeks = params.getMaxWeeksToMaturity() != null ? params.getMaxWeeksToMaturity() : 520;
+        LocalDate now = LocalDate.now();
+        LocalDate targetDate = showOffer && bond.getOfferDate() != null && bond.getOfferDate().isAfter(now)
+                ? bond.getOfferDate() : bond.getMaturityDate();
+        if (targetDate == null) {
+            return false;
+        }
+        long weeksUntilTarget = ChronoUnit.WEEKS.between(now, targetDate);
+        return weeksUntilTarget >= minWeeks && weeksUntilTarget <= maxWeeks;
+    }
+
+    private static Comparator<Bond> originalComparator(boolean includeOffer) {
+        return (b1, b2) -> {
+            BigDecimal yield1 = effectiveYield(b1, includeOffer);
+            BigDecimal yield2 = effectiveYield(b2, includeOffer);
+            if (yield1 == null && yield2 == null) return 0;
+            if (yield1 == null) return 1;
+            if (yield2 == null) return -1;
+            int floorCompare = Integer.compare(yield2.intValue(), yield1.intValue());
+            if (floorCompare != 0) return floorCompare;
+            Integer rating1 = b1.getRatingCode();
+            Integer rating2 = b2.getRatingCode();
+            if (rating1 != null && rating2 != null) {
+                int ratingCompare = Integer.compare(rating1, rating2);
+                if (ratingCompare != 0) return ratingCompare;
+            }
+            return yield2.compareTo(yield1);
+        };
+    }
+
+    private static Comparator<Bond> unratedLastComparator(boolean includeOffer) {
+        return Comparator.<Bond>comparingInt(bond -> -effectiveYield(bond, includeOffer).intValue())
+                .thenComparing(Bond::getRatingCode, Comparator.nullsLast(Comparator.<Integer>naturalOrder()))
+                .thenComparing(bond -> effectiveYield(bond, includeOffer), Comparator.reverseOrder());
+    }
+
+    private static BigDecimal effectiveYield(Bond bond, boolean includeOffer) {
+        if (includeOffer && bond.getOfferDate() != null && bond.getAnnualYieldOffer() != null) {
+            return bond.getAnnualYieldOffer();
+        }
+        return bond.getAnnualYield();
+    }
+
+    private static boolean isIncludeOffer(BondFilteringService.FilterParams params) {
+        return params.getIncludeOffer() != null && params.getIncludeOffer();
+    }
+
+    private static List<String> isins(List<Bond> bonds) {
+        return bonds.stream().map(Bond::getIsin).collect(Collectors.toList());
+    }
+
+    private static String describe(BondFilteringService.FilterParams params) {
+        return params.toString();
+    }
+}
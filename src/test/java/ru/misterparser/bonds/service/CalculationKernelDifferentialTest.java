@@ -0,0 +1,73 @@
+package ru.misterparser.bonds.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.misterparser.bonds.benchmark.SyntheticBonds;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.model.Bond;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сверка double-расчета с эталонным BigDecimal-расчетом по всем сохраняемым показателям:
+ * относительное расхождение не должно превышать 1e-6.
+ * Облигации из docs/rates.csv проверяются как есть (кроме погашенных к текущей дате) и в виде синтетического
+ * набора, где сроки отсчитываются от текущей даты со случайным разбросом срока (±30 дней) и цены (±1%).
+ */
+class CalculationKernelDifferentialTest {
+
+    private static final int SIZE = 3000;
+    private static final BigDecimal CUSTOM_FEE = new BigDecimal("0.30");
+
+    private static CalculationService ratesService;
+    private static CalculationService syntheticService;
+
+    @BeforeAll
+    static void setUp() {
+        SyntheticBonds.quietLogging();
+        ratesService = calculationService(SyntheticBonds.ratesUniverse());
+        syntheticService = calculationService(SyntheticBonds.sourceUniverse(SIZE));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        ratesService.shutdownCalculationPool();
+        syntheticService.shutdownCalculationPool();
+    }
+
+    @Test
+    void doubleKernelMatchesBigDecimalOnRatesCsv() {
+        assertKernelsMatch(ratesService.compareKernels(null));
+    }
+
+    @Test
+    void doubleKernelMatchesBigDecimalOnRatesCsvWithCustomFee() {
+        assertKernelsMatch(ratesService.compareKernels(CUSTOM_FEE));
+    }
+
+    @Test
+    void doubleKernelMatchesBigDecimalOnSyntheticUniverse() {
+        assertKernelsMatch(syntheticService.compareKernels(null));
+    }
+
+    @Test
+    void doubleKernelMatchesBigDecimalOnSyntheticUniverseWithCustomFee() {
+        assertKernelsMatch(syntheticService.compareKernels(CUSTOM_FEE));
+    }
+
+    private static CalculationService calculationService(List<Bond> bonds) {
+        return SyntheticBonds.calculationService(SyntheticBonds.calcConfig(CalcConfig.Kernel.BIGDECIMAL, 1),
+                SyntheticBonds.stubDataRepository(bonds), SyntheticBonds.capturingCalculationRepository(null));
+    }
+
+    private static void assertKernelsMatch(CalculationService.KernelComparison comparison) {
+        assertTrue(comparison.getCompared() > 0, "no bonds compared");
+        assertEquals(0, comparison.getMismatched(), () -> "max diff " + comparison.getMaxDiff()
+                + " in " + comparison.getMaxDiffField() + " for " + comparison.getMaxDiffIsin());
+    }
+}
@@ -0,0 +1,373 @@
+package ru.misterparser.bonds.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.GenericApplicationContext;
+import ru.misterparser.bonds.config.CalcConfig;
+import ru.misterparser.bonds.model.Bond;
+import ru.misterparser.bonds.repository.BondCalculationDataRepository;
+import ru.misterparser.bonds.repository.BondCalculationRepository;
+import ru.misterparser.bonds.repository.CalcGenerationRepository;
+import ru.misterparser.bonds.service.CalculationService;
+import ru.misterparser.bonds.service.DoubleCalculationKernel;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Синтетические наборы облигаций для бенчмарков.
+ * Параметры облигаций берутся из выгрузки MOEX docs/rates.csv (путь можно переопределить
+ * свойством bonds.benchmark.rates-csv) и тиражируются до нужного размера со случайным разбросом
+ * цены и срока, даты отсчитываются от текущей.
+ */
+public final class SyntheticBonds {
+
+    private static final Charset CP1251 = Charset.forName("CP1251");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final String[] RATINGS = {"ruAAA", "ruAA+", "ruAA", "ruAA-", "ruA+", "ruA", "ruA-",
+            "ruBBB+", "ruBBB", "ruBBB-", "ruBB+", "ruBB", "ruBB-", "ruB+", "ruB", "ruB-"};
+    private static final int[] RATING_CODES = {48, 49, 50, 51, 52, 53, 54,
+            146, 147, 148, 149, 150, 151, 152, 153, 154};
+
+    private static List<Prototype> prototypes;
+
+    private SyntheticBonds() {
+    }
+
+    /**
+     * Облигации с исходными данными (как из BondCalculationDataRepository)
+     */
+    public static List<Bond> sourceUniverse(int size) {
+        List<Prototype> source = loadPrototypes();
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        List<Bond> bonds = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            Prototype prototype = source.get(i % source.size());
+            String isin = String.format("SY%010d", i);
+
+            Bond bond = new Bond(isin);
+            bond.setId((long) i);
+            bond.setTicker(isin);
+            bond.setShortName(prototype.shortName + " " + i);
+            bond.setFaceValue(prototype.faceValue);
+            bond.setCouponValue(prototype.couponValue);
+            bond.setCouponFrequency(prototype.couponFrequency);
+            bond.setCouponLength(prototype.couponLength);
+            bond.setCouponDaysPassed(prototype.couponDaysPassed);
+
+            int daysToMaturity = Math.max(2, prototype.daysToMaturity + random.nextInt(61) - 30);
+            bond.setMaturityDate(today.plusDays(daysToMaturity));
+            if (prototype.daysToOffer != null && prototype.daysToOffer > 0 && prototype.daysToOffer < daysToMaturity) {
+                bond.setOfferDate(today.plusDays(prototype.daysToOffer));
+            }
+
+            double pricePercent = prototype.pricePercent * (1 + (random.nextDouble() - 0.5) * 0.02);
+            BigDecimal priceAsk = prototype.faceValue.multiply(BigDecimal.valueOf(pricePercent))
+                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+            bond.setPriceAsk(priceAsk);
+            bond.setPriceBid(priceAsk.multiply(new BigDecimal("0.998")).setScale(2, RoundingMode.HALF_UP));
+
+            bond.setFigi("SYFIGI" + i);
+            bond.setInstrumentUid("instrument-" + i);
+            bond.setAssetUid("asset-" + i);
+            bond.setBrandName(prototype.shortName);
+
+            int rating = random.nextInt(RATINGS.length);
+            bond.setRatingValue(RATINGS[rating]);
+            bond.setRatingCode(RATING_CODES[rating]);
+
+            LocalDateTime updatedAt = LocalDateTime.now().minusMinutes(random.nextInt(600));
+            bond.setMoexUpdatedAt(updatedAt);
+            bond.setTbankBondsUpdatedAt(updatedAt);
+            bond.setTbankPricesUpdatedAt(updatedAt);
+            bond.setDohodRatingsUpdatedAt(updatedAt);
+            bonds.add(bond);
+        }
+        return bonds;
+    }
+
+    /**
+     * Облигации с рассчитанными показателями (как из представления bonds)
+     */
+    public static List<Bond> calculatedUniverse(int size) {
+        List<Bond> source = sourceUniverse(size);
+        List<Bond> calculated = new ArrayList<>(size);
+
+        CalcConfig calcConfig = calcConfig(CalcConfig.Kernel.BIGDECIMAL, 1);
+        CalculationService calculationService = calculationService(calcConfig,
+                stubDataRepository(source), capturingCalculationRepository(calculated));
+        calculationService.calculateAllBondsFull();
+
+        LocalDateTime calculatedAt = LocalDateTime.now();
+        calculated.forEach(bond -> bond.setBondsCalcUpdatedAt(calculatedAt));
+        return calculated;
+    }
+
+    public static CalcConfig calcConfig(CalcConfig.Kernel kernel, int parallelism) {
+        CalcConfig calcConfig = new CalcConfig();
+        calcConfig.setPeriodMinutes(30);
+        calcConfig.setNdfl(new BigDecimal("13"));
+        calcConfig.setPrecision(8);
+        calcConfig.setMinDaysToMaturity(1);
+        calcConfig.setMaxYield(new BigDecimal("50"));
+        calcConfig.setBulkMode(true);
+        calcConfig.setChunkSize(500);
+        calcConfig.setParallelism(parallelism);
+        calcConfig.setIncremental(false);
+        calcConfig.setKernel(kernel);
+        return calcConfig;
+    }
+
+    /**
+     * CalculationService без БД: исходные данные берутся из заглушки репозитория,
+     * результаты передаются в заглушку репозитория bonds_calc
+     */
+    public static CalculationService calculationService(CalcConfig calcConfig,
+                                                        BondCalculationDataRepository dataRepository,
+                                                        BondCalculationRepository calculationRepository) {
+        GenericApplicationContext context = new GenericApplicationContext();
+        CalculationService calculationService = new CalculationService(calcConfig, dataRepository,
+                calculationRepository, stubGenerationRepository(), context, new DoubleCalculationKernel(calcConfig));
+        context.getBeanFactory().registerSingleton("calculationService", calculationService);
+        context.refresh();
+        calculationService.initCalculationPool();
+        return calculationService;
+    }
+
+    public static BondCalculationDataRepository stubDataRepository(List<Bond> bonds) {
+        return new BondCalculationDataRepository(null) {
+            @Override
+            public List<Bond> findAllForCalculation() {
+                return bonds;
+            }
+
+            @Override
+            public LocalDateTime getDatabaseTime() {
+                return LocalDateTime.now();
+            }
+        };
+    }
+
+    public static BondCalculationRepository capturingCalculationRepository(List<Bond> saved) {
+        return new BondCalculationRepository(null) {
+            @Override
+            public void saveOrUpdateCalculationDataBatch(List<Bond> bonds, long generation) {
+                if (saved != null) {
+                    saved.addAll(bonds);
+                }
+            }
+
+            @Override
+            public int deleteSupersededRows(long oldestKept, long oldestKeptBase) {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Поколения расчета в памяти: каждый прогон публикуется сразу, старые поколения не удаляются
+     */
+    public static CalcGenerationRepository stubGenerationRepository() {
+        AtomicLong lastGeneration = new AtomicLong();
+        AtomicLong current = new AtomicLong();
+        return new CalcGenerationRepository(null) {
+            @Override
+            public long createGeneration(Long previousGeneration) {
+                return lastGeneration.incrementAndGet();
+            }
+
+            @Override
+            public long findCurrentGeneration() {
+                return current.get();
+            }
+
+            @Override
+            public boolean publish(long generation) {
+                current.accumulateAndGet(generation, Math::max);
+                return current.get() == generation;
+            }
+
+            @Override
+            public Optional<Long> findOldestKeptGeneration(int keep) {
+                return Optional.empty();
+            }
+        };
+    }
+
+    /**
+     * Отключает DEBUG-логирование приложения, чтобы оно не искажало замеры
+     */
+    public static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger("ru.misterparser.bonds")).setLevel(Level.WARN);
+    }
+
+    /**
+     * Облигации из строк docs/rates.csv без изменений: ISIN, номинал, купон, даты погашения и оферты
+     * и цена (как цена предложения) берутся из выгрузки как есть. Облигации, погашенные к текущей дате,
+     * расчет пропускает.
+     */
+    public static List<Bond> ratesUniverse() {
+        List<Bond> bonds = new ArrayList<>();
+        forEachRatesRow((row, columns) -> {
+            Bond bond = parseRatesBond(row, columns);
+            if (bond != null) {
+                bonds.add(bond);
+            }
+        });
+        if (bonds.isEmpty()) {
+            throw new IllegalStateException("No usable bonds in " + ratesCsvPath());
+        }
+        return bonds;
+    }
+
+    private static synchronized List<Prototype> loadPrototypes() {
+        if (prototypes != null) {
+            return prototypes;
+        }
+
+        List<Prototype> result = new ArrayList<>();
+        forEachRatesRow((row, columns) -> {
+            Prototype prototype = parsePrototype(row, columns);
+            if (prototype != null) {
+                result.add(prototype);
+            }
+        });
+
+        if (result.isEmpty()) {
+            throw new IllegalStateException("No usable bonds in " + ratesCsvPath());
+        }
+        prototypes = result;
+        return prototypes;
+    }
+
+    private static String ratesCsvPath() {
+        return System.getProperty("bonds.benchmark.rates-csv", "docs/rates.csv");
+    }
+
+    /**
+     * Передает строки облигаций выгрузки вместе с индексами колонок из строки заголовка
+     */
+    private static void forEachRatesRow(BiConsumer<String[], Map<String, Integer>> consumer) {
+        String path = ratesCsvPath();
+        List<String[]> rows;
+        try (Reader reader = new InputStreamReader(new FileInputStream(path), CP1251);
+             CSVReader csvReader = new CSVReaderBuilder(reader)
+                     .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
+                     .build()) {
+            rows = csvReader.readAll();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read " + path, e);
+        }
+
+        Map<String, Integer> columns = null;
+        for (String[] row : rows) {
+            if (columns == null) {
+                if (row.length > 0 && "SECID".equals(row[0].trim())) {
+                    columns = new HashMap<>();
+                    for (int i = 0; i < row.length; i++) {
+                        columns.put(row[i].trim(), i);
+                    }
+                }
+                continue;
+            }
+            consumer.accept(row, columns);
+        }
+    }
+
+    private static Bond parseRatesBond(String[] row, Map<String, Integer> columns) {
+        try {
+            String isin = value(row, columns, "ISIN");
+            Bond bond = new Bond(isin.isEmpty() ? value(row, columns, "SECID") : isin);
+            bond.setTicker(bond.getIsin());
+            bond.setShortName(value(row, columns, "SHORTNAME"));
+            bond.setFaceValue(new BigDecimal(value(row, columns, "FACEVALUE").replace(",", ".")));
+            bond.setCouponValue(new BigDecimal(value(row, columns, "COUPONVALUE").replace(",", ".")));
+            bond.setCouponFrequency(Integer.parseInt(value(row, columns, "COUPONFREQUENCY")));
+            bond.setCouponLength(Integer.parseInt(value(row, columns, "COUPONLENGTH")));
+            bond.setCouponDaysPassed(Integer.parseInt(value(row, columns, "COUPONDAYSPASSED")));
+            bond.setMaturityDate(parseDate(value(row, columns, "MATDATE")));
+            String offerDate = value(row, columns, "OFFERDATE");
+            if (!offerDate.isEmpty()) {
+                bond.setOfferDate(parseDate(offerDate));
+            }
+            BigDecimal pricePercent = new BigDecimal(value(row, columns, "PRICE").replace(",", "."));
+            bond.setPriceAsk(bond.getFaceValue().multiply(pricePercent)
+                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+            return bond.getCouponLength() > 0 ? bond : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Prototype parsePrototype(String[] row, Map<String, Integer> columns) {
+        try {
+            Prototype prototype = new Prototype();
+            prototype.shortName = value(row, columns, "SHORTNAME");
+            prototype.faceValue = new BigDecimal(value(row, columns, "FACEVALUE").replace(",", "."));
+            prototype.couponValue = new BigDecimal(value(row, columns, "COUPONVALUE").replace(",", "."));
+            prototype.couponFrequency = Integer.parseInt(value(row, columns, "COUPONFREQUENCY"));
+            prototype.couponLength = Integer.parseInt(value(row, columns, "COUPONLENGTH"));
+            prototype.couponDaysPassed = Integer.parseInt(value(row, columns, "COUPONDAYSPASSED"));
+            prototype.daysToMaturity = Integer.parseInt(value(row, columns, "DAYSTOREDEMPTION"));
+            prototype.pricePercent = Double.parseDouble(value(row, columns, "PRICE").replace(",", "."));
+
+            // Срок до оферты в выгрузке не указан - считаем его относительно срока до погашения
+            String offerDate = value(row, columns, "OFFERDATE");
+            if (!offerDate.isEmpty()) {
+                LocalDate exportDate = parseDate(value(row, columns, "MATDATE")).minusDays(prototype.daysToMaturity);
+                prototype.daysToOffer = (int) ChronoUnit.DAYS.between(exportDate, parseDate(offerDate));
+            }
+
+            boolean usable = prototype.couponLength > 0 &&
+                    prototype.daysToMaturity > 0 &&
+                    prototype.pricePercent > 0 &&
+                    prototype.faceValue.signum() > 0;
+            return usable ? prototype : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static LocalDate parseDate(String value) {
+        return value.contains(".") ? LocalDate.parse(value, DATE_FORMAT) : LocalDate.parse(value);
+    }
+
+    private static String value(String[] row, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index != null && index < row.length ? row[index].trim() : "";
+    }
+
+    private static class Prototype {
+        private String shortName;
+        private BigDecimal faceValue;
+        private BigDecimal couponValue;
+        private int couponFrequency;
+        private int couponLength;
+        private int couponDaysPassed;
+        private int daysToMaturity;
+        private Integer daysToOffer;
+        private double pricePercent;
+    }
+}